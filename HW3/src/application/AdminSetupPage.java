@@ -6,9 +6,8 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
+import java.util.EnumSet;
 
 /**
  * The SetupAdmin class handles the setup process for creating an administrator account.
@@ -72,18 +71,14 @@ public class AdminSetupPage {
             	return;
             }
             
-            try {
-            	// Create a new User object with admin role and register in the database
-            	User user=new User(userName, password, "admin");
-                databaseHelper.register(user);
+            // Create a new User object with admin role and register in the database
+            User user=new User(userName, password, EnumSet.of(Role.ADMIN));
+            databaseHelper.async().run(db -> db.register(user)).thenRun(() -> {
                 System.out.println("Administrator setup completed.");
                 
                 // Navigate to the Welcome Login Page
                 new SetupCompletePage(databaseHelper).show(primaryStage);
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+            }).exceptionally(AsyncDatabase::logFailure);
         });
 
         VBox layout = new VBox(10, userNameField, passwordField, setupButton, userpassErrors);
@@ -1,19 +1,30 @@
 package application;
 
 public class Answer {
+	private int id;
 	private int qID;
 	private String userName;
 	private String content;
+	private boolean resolves;
 	
 	// Constructor to initialize a question with a user name, title, and body
 	public Answer(int qID, String userName, String content) {
+		this(0, qID, userName, content, false);
+	}
+	
+	// Constructor for an answer read back from the database, with its id and whether it resolves the question
+	public Answer(int id, int qID, String userName, String content, boolean resolves) {
+		this.id = id;
 		this.qID = qID;
 		this.userName = userName;
 		this.content = content;
+		this.resolves = resolves;
 	}
 	
-	// Functions to return qID, user name, or content
+	// Functions to return id, qID, user name, content, or the resolves flag
+	public int getID() {return id;}
 	public int getQID() {return qID;}
 	public String getUserName() {return userName;}
 	public String getContent() {return content;}
+	public boolean doesResolve() {return resolves;}
 }
\ No newline at end of file
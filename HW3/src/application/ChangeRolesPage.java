@@ -6,9 +6,8 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
+import java.util.EnumSet;
 
 
 /**
@@ -22,7 +21,6 @@ public class ChangeRolesPage {
 	boolean instructor = false;
 	boolean staff = false;
 	boolean reviewer = false;
-	String roles = "";
 	
 	/**
      * Displays the admin page in the provided primary stage.
@@ -125,40 +123,35 @@ public class ChangeRolesPage {
 	    	userNameField.clear();
 	    	deleteLabel.setText("Enter UserName of User to Change and Click Roles to Set");
 	    	
-	    	// If invalid username, return
-	    	if (!(databaseHelper.doesUserExist(userName))) {
-	    		deleteLabel.setText("User Does Not Exist");
-	    		return;
-	    	}
-	    	
+	    	EnumSet<Role> newRoles = EnumSet.noneOf(Role.class);
 	    	if (admin) {
-	    		roles = roles + "admin, ";
+	    		newRoles.add(Role.ADMIN);
 	    	}
 	    	if (student) {
-	    		roles = roles + "student, ";
+	    		newRoles.add(Role.STUDENT);
 	    	}
 	    	if (instructor) {
-	    		roles = roles + "instructor, ";
+	    		newRoles.add(Role.INSTRUCTOR);
 	    	}
 	    	if (staff) {
-	    		roles = roles + "staff, ";
+	    		newRoles.add(Role.STAFF);
 	    	}
 	    	if (reviewer) {
-	    		roles = roles + "reviewer, ";
+	    		newRoles.add(Role.REVIEWER);
 	    	}
 	    	
-	    	if (roles.length() == 0) {
+	    	if (newRoles.isEmpty()) {
 	    		deleteLabel.setText("Must Select a Role");
+	    		return;
 	    	}
-	    	
-	    	
-		    try {
-		    	roles = roles.substring(0, roles.length()-2); 
-		    	databaseHelper.changeRoles(userName, roles);
-		    } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-		    }
+		    
+		    // Change the roles off the UI thread
+		    databaseHelper.async().supply(db -> db.changeRoles(userName, newRoles)).thenAccept(output -> {
+		    	// If the roles were not changed, tell the admin why
+		    	if (!(output.equals(userName))) {
+		    		deleteLabel.setText(output);
+		    	}
+		    }).exceptionally(AsyncDatabase::logFailure);
 	    });
 	    
 	    // Label to the selected roles
@@ -174,7 +167,6 @@ public class ChangeRolesPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 
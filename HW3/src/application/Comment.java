@@ -1,19 +1,27 @@
 package application;
 
 public class Comment {
+	private int id;
 	private int qID;
 	private String userName;
 	private String content;
 	
 	// Constructor to initialize a comment with a user name, title, and body
 	public Comment(int qID, String userName, String content) {
+		this(0, qID, userName, content);
+	}
+	
+	// Constructor for a comment read back from the database with its id
+	public Comment(int id, int qID, String userName, String content) {
+		this.id = id;
 		this.qID = qID;
 		this.userName = userName;
 		this.content = content;
 	}
 	
-	// Functions to return qID, user name, or content
+	// Functions to return id, qID, user name, or content
+	public int getID() {return id;}
 	public int getQID() {return qID;}
 	public String getUserName() {return userName;}
 	public String getContent() {return content;}
-}
+}
\ No newline at end of file
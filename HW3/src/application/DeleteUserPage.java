@@ -6,8 +6,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 
@@ -59,10 +57,9 @@ public class DeleteUserPage {
 		    
 		    // If yes is clicked attempt to delete user
 		    yes.setOnAction(b -> {
-		    	try {
+		    	databaseHelper.async().supply(db -> db.tryDeleteUser(userName)).thenAccept(output -> {
 		    		
 		    		// If user is not deleted clear userName field and tell user
-		    		String output = databaseHelper.tryDeleteUser(userName);
 		    		if (!(output.equals(userName))) {
 		    			userNameField.clear();
 		    			System.out.println(output);
@@ -76,10 +73,7 @@ public class DeleteUserPage {
 		    	    // Remove Yes and No buttons
 		    	    layout.getChildren().removeAll(yes, no);
 		    	    
-		    	} catch (SQLException e) {
-	                System.err.println("Database error: " + e.getMessage());
-	                e.printStackTrace();
-	            }
+		    	}).exceptionally(AsyncDatabase::logFailure);
 		    });
 		    layout.getChildren().addAll(yes, no);
 	    });
@@ -92,7 +86,6 @@ public class DeleteUserPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 
@@ -116,8 +116,13 @@ public class InvitationPage {
         	if (!admin && !student && !instructor && !staff && !reviewer) {
         		return;
         	}
-            String invitationCode = databaseHelper.generateInvitationCode(admin, student, instructor, staff, reviewer);
-            inviteCodeLabel.setText(invitationCode);
+            // Copy the selected roles, since the fields are reset before the code comes back
+            boolean codeAdmin = admin, codeStudent = student, codeInstructor = instructor,
+            		codeStaff = staff, codeReviewer = reviewer;
+            databaseHelper.async()
+            		.supply(db -> db.generateInvitationCode(codeAdmin, codeStudent, codeInstructor, codeStaff, codeReviewer))
+            		.thenAccept(inviteCodeLabel::setText)
+            		.exceptionally(AsyncDatabase::logFailure);
             
     	    // Set all user boolean values to false
             admin = false;
@@ -142,7 +147,6 @@ public class InvitationPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 	    
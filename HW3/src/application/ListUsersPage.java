@@ -6,8 +6,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 
@@ -32,12 +30,9 @@ public class ListUsersPage {
 	    // Button to list all users
 	    Button listUsersButton = new Button("List all Users");
 	    listUsersButton.setOnAction(a -> {
-	    	try {
-	    		listLabel.setText(databaseHelper.listUsers());
-	    	} catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+	    	databaseHelper.async().supply(DatabaseHelper::listUsers)
+	    			.thenAccept(listLabel::setText)
+	    			.exceptionally(AsyncDatabase::logFailure);
 	    });
 	    
 	    // Button to navigate to admin home
@@ -49,7 +44,6 @@ public class ListUsersPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 
@@ -5,8 +5,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -50,26 +48,32 @@ public class OneTimeLoginPage {
         	new UserNameRecognizer();
             String testedUserName = UserNameRecognizer.checkForValidUserName(userName);
             
-            // If either user name or password is invalid, clear input box and return
-            if (!(databaseHelper.doesUserExist(userName))) {
-            	userNameField.clear();
-            	System.out.println(testedUserName);
-            	errorLabel.setText(errorLabel.getText() + "\nuser does not exist"); // MAKE THE PRINTED VALUES MATCH DOCUMENTATION
-            	return;
-            }
-            
-            try {
-            	if (databaseHelper.checkOneTimePass(userName, password)) {
+            // Check the one time password off the UI thread, before any query; null means no such user
+            databaseHelper.async().supply(db -> {
+            	if (db.oneTimePasswords().consume(userName, password)) {
+            		return true;
+            	}
+            	return db.doesUserExist(userName) ? Boolean.FALSE : null;
+            }).thenAccept(valid -> {
+            	// If the user name is invalid, clear input box and return
+            	if (valid == null) {
+            		userNameField.clear();
+            		System.out.println(testedUserName);
+            		errorLabel.setText(errorLabel.getText() + "\nuser does not exist"); // MAKE THE PRINTED VALUES MATCH DOCUMENTATION
+            	} else if (valid) {
             		new PasswordResetPage(databaseHelper).show(primaryStage, userName);
             	} else {
             		// Display an error if the account does not exist
                     errorLabel.setText("invalid username or password");
             	}
-            	
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            } 
+            }).exceptionally(error -> {
+            	// Too many failed attempts: tell the user instead of logging a database error
+            	if (AsyncDatabase.unwrap(error) instanceof ThrottledException) {
+            		errorLabel.setText(AsyncDatabase.unwrap(error).getMessage());
+            		return null;
+            	}
+            	return AsyncDatabase.logFailure(error);
+            });
         });
 
 
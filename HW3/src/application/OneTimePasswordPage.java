@@ -54,8 +54,10 @@ public class OneTimePasswordPage {
         // Generate the oneTimePassword and assign it to a specific user
         showPassButton.setOnAction(a -> {
         	String userName = userNameField.getText();
-        	String oneTimePass = databaseHelper.createOneTimePass(userName);
-        	oneTimePassLabel.setText(oneTimePass);
+        	databaseHelper.async().supply(db -> db.doesUserExist(userName)
+        			? db.oneTimePasswords().issue(userName) : "User does not exist")
+        			.thenAccept(oneTimePassLabel::setText)
+        			.exceptionally(AsyncDatabase::logFailure);
         });
         
         // Button to go back to admin home page
@@ -67,7 +69,6 @@ public class OneTimePasswordPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 	    
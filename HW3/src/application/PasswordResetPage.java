@@ -6,8 +6,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -51,17 +49,13 @@ public class PasswordResetPage {
             	return;
             }
             
-            try {
-            	// Update database to the new password
-            	databaseHelper.updateUserPassword(userName, password);
+            // Update database to the new password
+            databaseHelper.async().run(db -> db.updateUserPassword(userName, password)).thenRun(() -> {
                 
                 // Navigate to the User Login Page
                 new UserLoginPage(databaseHelper).show(primaryStage);
                 
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+            }).exceptionally(AsyncDatabase::logFailure);
         });
 
         VBox layout = new VBox(10, passwordField, setupButton, userpassErrors);
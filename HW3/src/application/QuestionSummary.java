@@ -0,0 +1,44 @@
+package application;
+
+import java.sql.Timestamp;
+
+/**
+ * A QuestionSummary is one row of the question feed: enough to draw the post button
+ * and apply the feed filters without loading the question body or its answers.
+ */
+public class QuestionSummary {
+	private int id;
+	private String userName;
+	private String title;
+	private boolean resolved;
+	private boolean deleted;
+	private int answerCount;
+	private int commentCount;
+	private Timestamp lastActivityAt;
+
+	// Constructor to initialize a feed row from the questions table
+	public QuestionSummary(int id, String userName, String title, boolean resolved, boolean deleted,
+			int answerCount, int commentCount, Timestamp lastActivityAt) {
+		this.id = id;
+		this.userName = userName;
+		this.title = title;
+		this.resolved = resolved;
+		this.deleted = deleted;
+		this.answerCount = answerCount;
+		this.commentCount = commentCount;
+		this.lastActivityAt = lastActivityAt;
+	}
+
+	// Functions to return the feed row fields
+	public int getID() {return id;}
+	public String getUserName() {return userName;}
+	public String getTitle() {return title;}
+	public boolean isResolved() {return resolved;}
+	public boolean isDeleted() {return deleted;}
+	public int getAnswerCount() {return answerCount;}
+	public int getCommentCount() {return commentCount;}
+	public Timestamp getLastActivityAt() {return lastActivityAt;}
+
+	// Return true if the question was created by the specified user
+	public boolean isOwnedBy(String user) {return userName != null && userName.equals(user);}
+}
@@ -0,0 +1,49 @@
+package application;
+
+import java.util.List;
+
+/**
+ * A QuestionThread is everything needed to show one question: the question row,
+ * its answers with their ids and resolve flags, its comments, and whether the
+ * viewing user owns the question.
+ */
+public class QuestionThread {
+	private int id;
+	private String userName;
+	private String title;
+	private String body;
+	private boolean resolved;
+	private boolean deleted;
+	private List<Answer> answers;
+	private List<Comment> comments;
+	private boolean viewerOwns;
+
+	// Constructor to initialize a thread from a question row and its answers and comments
+	public QuestionThread(int id, String userName, String title, String body, boolean resolved, boolean deleted,
+			List<Answer> answers, List<Comment> comments, boolean viewerOwns) {
+		this.id = id;
+		this.userName = userName;
+		this.title = title;
+		this.body = body;
+		this.resolved = resolved;
+		this.deleted = deleted;
+		this.answers = answers;
+		this.comments = comments;
+		this.viewerOwns = viewerOwns;
+	}
+
+	// Functions to return the question fields
+	public int getID() {return id;}
+	public String getUserName() {return userName;}
+	public String getTitle() {return title;}
+	public String getBody() {return body;}
+	public boolean isResolved() {return resolved;}
+	public boolean isDeleted() {return deleted;}
+
+	// Answers and comments in the order they were posted
+	public List<Answer> getAnswers() {return answers;}
+	public List<Comment> getComments() {return comments;}
+
+	// Return true if the user the thread was loaded for wrote the question
+	public boolean isViewerOwner() {return viewerOwns;}
+}
@@ -2,6 +2,7 @@ package application;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
@@ -15,6 +16,7 @@ import javafx.scene.control.TextField;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import databasePart1.AsyncDatabase;
 import databasePart1.QuestionsAnswersDatabase;
 import databasePart1.DatabaseHelper;
 
@@ -35,32 +37,67 @@ public class QuestionsAnswersPage {
     // Initialize a boolean to check if the resolved checkbox is checked
     private boolean isChecked = false;
     
+    // Initialize a boolean to check if the feed is sorted by recent activity
+    private boolean sortByActivity = false;
+    
     // Initialize filter text
     private String filterText = "";
     
     final User user;
     final DatabaseHelper databaseHelper;
     
-    private boolean connected = false;
+    // Completes once the database is connected; every query waits on it
+    private final CompletableFuture<Void> connected;
+    
+    // Number of questions fetched each time the feed scrolls near the bottom
+    private static final int FEED_PAGE_SIZE = 30;
+    
+    // Keyset paging state for the question feed: the last row shown, and whether the feed has run out
+    private QuestionSummary feedCursor = null;
+    private boolean feedExhausted = false;
+    private boolean feedLoading = false;
+    
+    // Incremented every time the feed is redrawn so late pages for an old feed are dropped
+    private int feedGeneration = 0;
     
     public QuestionsAnswersPage(Stage primaryStage, DatabaseHelper databaseHelper, User user) {
     	this.databaseHelper = databaseHelper;
     	this.user = user;
+    	this.connected = qaDatabase.async().run(QuestionsAnswersDatabase::connectToQuestionAnswerDatabase);
     	show(primaryStage);
     }
     
+    // Run a query on a worker thread once the database is connected; the result arrives on the UI thread
+    private <T> CompletableFuture<T> query(AsyncDatabase.DatabaseCall<QuestionsAnswersDatabase, T> call) {
+    	return connected.thenCompose(v -> qaDatabase.async().supply(call));
+    }
+    
+    // Run an update on a worker thread once the database is connected
+    private CompletableFuture<Void> update(AsyncDatabase.DatabaseTask<QuestionsAnswersDatabase> task) {
+    	return connected.thenCompose(v -> qaDatabase.async().run(task));
+    }
+    
+    // Show an error under the open question
+    private void showAnswerError(String message) {
+    	errorLabel.setText(message);
+    	if (!vbox.getChildren().contains(errorLabel)) {
+    		vbox.getChildren().add(errorLabel);
+    	}
+    }
+    
+    // Connect to the database ahead of the page, e.g. so a host creates it before serving it
+    public static void openDatabase() throws SQLException {
+    	qaDatabase.connectToQuestionAnswerDatabase();
+    }
+    
+    // Commit any queued answers and comments and close the database; called when the application exits
+    public static void closeDatabase() {
+    	qaDatabase.closeConnection();
+    }
+    
     	
     // Show the main page
     public void show(Stage primaryStage) {
-    	if (!connected) {
-    		try {
-    			qaDatabase.connectToQuestionAnswerDatabase();
-    			connected = true;
-    		} catch (SQLException e) {
-    			e.printStackTrace();
-    		}
-    	}
-    	
     	userName = user.getUserName();
     	
         // Initialize vbox for right side of window
@@ -93,6 +130,14 @@ public class QuestionsAnswersPage {
         });
         ownUnresolved.setSelected(isChecked);
         
+        // Sort the feed by latest answer, comment or edit instead of by posting order
+        CheckBox recentActivity = new CheckBox("Sort by recent activity");
+        recentActivity.setOnAction(a -> {
+        	sortByActivity = !sortByActivity;
+        	show(primaryStage);
+        });
+        recentActivity.setSelected(sortByActivity);
+        
         // Add filter text field and button
         TextField filterField = new TextField();
         filterField.setPromptText("Filter questions...");
@@ -109,71 +154,25 @@ public class QuestionsAnswersPage {
         filterBox.setAlignment(Pos.CENTER_LEFT);
         filterBox.getChildren().addAll(filterField, filterButton);
         
-        posts.getChildren().addAll(addQuestion, ownUnresolved, filterBox);
-
-        try {
-            for (int i = qaDatabase.numQuestions(); i > 0; i--) {
-
-                // Skip to next question if current was deleted
-                if (qaDatabase.isDeleted(i)) {
-                    continue;
-                }
-                
-                if (ownUnresolved.isSelected()) {
-                	if (!(!(qaDatabase.isResolved(i)) && qaDatabase.doesUserOwnQuestion(i, userName))) {
-                		continue;
-                	}
-                }
-                
-                final int qID = i;
-                String questionTitle = qaDatabase.getTitleFromQuestionID(qID);
-                String questionBody = "";
-                
-                try {
-                    String[] questionInfo = qaDatabase.getQuestionInfo(qID);
-                    questionBody = questionInfo[2].toLowerCase();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                
-                // Skip if filter text is not empty and neither title nor body contains the filter text
-                if (!filterText.isEmpty() && 
-                    !questionTitle.toLowerCase().contains(filterText) && 
-                    !questionBody.contains(filterText)) {
-                    continue;
-                }
-                
-                // Create button for each question
-                Button postButton = new Button(questionTitle);
-                
-                // If the current question is resolved, add a tag
-                if (qaDatabase.isResolved(i)) {
-                	postButton.setText(postButton.getText() + " *Answered*");
-                }
-                
-                postButton.setMinWidth(250);
-                postButton.setStyle("-fx-background-color: transparent;");
-                postButton.setWrapText(true);
-
-                // When a question is clicked on, open it on the right
-                postButton.setOnAction(a -> {
-                    printQuestion(qaDatabase.getQuestionInfo(qID), primaryStage, qID);
-                });
-
-                // Create separator between questions
-                Separator separator = new Separator();
-                separator.setMinWidth(250);
-                posts.getChildren().addAll(postButton, separator);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        posts.getChildren().addAll(addQuestion, ownUnresolved, recentActivity, filterBox);
 
         // ScrollPane to make posts vbox scrollable
         ScrollPane postsScrollPane = new ScrollPane();
         postsScrollPane.setContent(posts);
         postsScrollPane.setFitToWidth(true);
         postsScrollPane.setPrefWidth(300);
+        
+        // Load the first page of the feed, then fetch the next page whenever the user scrolls near the bottom
+        feedCursor = null;
+        feedExhausted = false;
+        feedLoading = false;
+        feedGeneration++;
+        loadNextFeedPage(posts, primaryStage);
+        postsScrollPane.vvalueProperty().addListener((obs, oldValue, newValue) -> {
+        	if (newValue.doubleValue() >= postsScrollPane.getVmax() * 0.9) {
+        		loadNextFeedPage(posts, primaryStage);
+        	}
+        });
 
         // ScrollPane to make vbox (questions and answers) scrollable
         ScrollPane rightScrollPane = new ScrollPane();
@@ -194,23 +193,108 @@ public class QuestionsAnswersPage {
         primaryStage.show();
     }
 
+    // Append the next page of questions to the feed
+    private void loadNextFeedPage(VBox posts, Stage primaryStage) {
+    	if (feedExhausted || feedLoading) {
+    		return;
+    	}
+    	feedLoading = true;
+    	int generation = feedGeneration;
+    	
+    	// Owner and resolved filters are applied in SQL
+    	String owner = isChecked ? userName : null;
+    	QuestionsAnswersDatabase.FeedOrder order = sortByActivity
+    			? QuestionsAnswersDatabase.FeedOrder.RECENT_ACTIVITY : QuestionsAnswersDatabase.FeedOrder.NEWEST;
+    	QuestionSummary cursor = feedCursor;
+    	String filter = filterText;
+    	boolean unresolvedOnly = isChecked;
+    	
+    	query(db -> db.getQuestionFeedPage(cursor, FEED_PAGE_SIZE, owner, unresolvedOnly, filter, order)).thenAccept(page -> {
+    		// Drop the page if the feed was redrawn while it was loading
+    		if (generation != feedGeneration) {
+    			return;
+    		}
+    		
+            for (QuestionSummary question : page) {
+                final int qID = question.getID();
+                
+                // Create button for each question
+                Button postButton = new Button(question.getTitle());
+                
+                // If the current question is resolved, add a tag
+                if (question.isResolved()) {
+                	postButton.setText(postButton.getText() + " *Answered*");
+                }
+                
+                // Show the answer and feedback counts kept on the question row
+                postButton.setText(postButton.getText() + "\n" + question.getAnswerCount() + " answers, "
+                		+ question.getCommentCount() + " feedback");
+                
+                postButton.setMinWidth(250);
+                postButton.setStyle("-fx-background-color: transparent;");
+                postButton.setWrapText(true);
+
+                // When a question is clicked on, open it on the right
+                postButton.setOnAction(a -> {
+                    openQuestion(qID, primaryStage);
+                });
+
+                // Create separator between questions
+                Separator separator = new Separator();
+                separator.setMinWidth(250);
+                posts.getChildren().addAll(postButton, separator);
+            }
+            
+            if (page.size() < FEED_PAGE_SIZE) {
+            	feedExhausted = true;
+            } else {
+            	feedCursor = page.get(page.size() - 1);
+            }
+            feedLoading = false;
+    	}).exceptionally(e -> {
+    		if (generation == feedGeneration) {
+    			feedLoading = false;
+    		}
+    		return AsyncDatabase.logFailure(e);
+    	});
+    }
+
+    // Load a question thread and show it with its answers
+    public void openQuestion(int id, Stage primaryStage) {
+    	query(db -> db.loadThread(id, userName)).thenAccept(thread -> {
+    		if (thread != null) {
+    			printQuestion(thread, primaryStage);
+    		}
+    	}).exceptionally(AsyncDatabase::logFailure);
+    }
+    
+    // Load a question thread and show it with its comments
+    public void openCommentPage(int id, Stage primaryStage) {
+    	query(db -> db.loadThread(id, userName)).thenAccept(thread -> {
+    		if (thread != null) {
+    			printCommentPage(thread, primaryStage);
+    		}
+    	}).exceptionally(AsyncDatabase::logFailure);
+    }
+    
     // Show a question and answers on right side of screen
-    public void printQuestion(String[] info, Stage primaryStage, int id) {
+    public void printQuestion(QuestionThread thread, Stage primaryStage) {
+    	int id = thread.getID();
     	
         // Clear the vbox initially
         vbox.getChildren().clear();
         vbox.setAlignment(Pos.CENTER_LEFT);
 
         // Create labels for title, user name, and body
-        Label titleLabel = new Label(info[1]);
+        Label titleLabel = new Label(thread.getTitle());
         titleLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 16px;");
         titleLabel.setWrapText(true);
 
-        Label userNameLabel = new Label(info[0]);
+        Label userNameLabel = new Label(thread.getUserName());
         userNameLabel.setStyle("-fx-font-size: 14px;");
         userNameLabel.setWrapText(true);
         
-        Label bodyLabel = new Label(info[2]);
+        Label bodyLabel = new Label(thread.getBody());
         bodyLabel.setWrapText(true);
         bodyLabel.setWrapText(true);
         
@@ -223,57 +307,63 @@ public class QuestionsAnswersPage {
         // Button to delete question
         Button deleteButton = new Button("Delete Question");
         deleteButton.setOnAction(a -> {
-        	qaDatabase.deleteQuestion(id);
-            show(primaryStage);
+        	update(db -> db.deleteQuestion(id))
+        			.thenRun(() -> show(primaryStage))
+        			.exceptionally(AsyncDatabase::logFailure);
         });
         
         // Button to resolve question
         Button resolveButton = new Button("Resolve Question");
         resolveButton.setOnAction(a -> {
-        	qaDatabase.resolveQuestion(id);
-            show(primaryStage);
+        	update(db -> db.resolveQuestion(id))
+        			.thenRun(() -> show(primaryStage))
+        			.exceptionally(AsyncDatabase::logFailure);
         });
         
         // Button to unresolve question
         Button unResolveButton = new Button("Unresolve Question");
         unResolveButton.setOnAction(a -> {
-        	qaDatabase.unResolveQuestion(id);
-            show(primaryStage);
+        	update(db -> db.unResolveQuestion(id))
+        			.thenRun(() -> show(primaryStage))
+        			.exceptionally(AsyncDatabase::logFailure);
         });
 
-        // Array list to hold answers
-        List<String[]> answers = qaDatabase.getAnswers(id);
-
         // Loop through answers and create user name and content labels for each
-        for (int i = 0; i < answers.size(); i++) {
-        	final int answerCount = i;
-        	String[] answer = answers.get(i);
-        	
-            Label answerUserLabel = new Label(answer[0]);
+        for (Answer answer : thread.getAnswers()) {
+            Label answerUserLabel = new Label(answer.getUserName());
             answerUserLabel.setWrapText(true);
             
-            Label answerContentLabel = new Label("     " + answer[1]);
+            Label answerContentLabel = new Label("     " + answer.getContent());
             answerContentLabel.setWrapText(true);
             
-            int answerID = qaDatabase.getAnswerID(id, answerCount);
-            if (qaDatabase.doesAnswerResolve(answerID)) {
+            int answerID = answer.getID();
+            if (answer.doesResolve()) {
             	answerUserLabel.setStyle("-fx-font-weight: bold;");
             	answerContentLabel.setStyle("-fx-font-weight: bold;");
             }
             
-            if (qaDatabase.doesUserOwnQuestion(id, userName)) {
+            if (thread.isViewerOwner()) {
             	Button answeredButton = new Button("Answers the Question");
             	
+            	// Answers still waiting in the write-behind queue have no id yet and cannot be accepted
+            	if (answerID == 0) {
+            		answeredButton.setText("Answers the Question (saving...)");
+            		answeredButton.setDisable(true);
+            	}
+            	
             	answeredButton.setOnAction(a -> {
-            		
-            		
-		    		if (answerID == 0) {
-		    			System.out.println("Error in getAnswerID\n");
-		    			return;
-		    		}
-		        	qaDatabase.resolveQuestion(id);
-		        	qaDatabase.answerResolves(id, answerID);
-		            show(primaryStage);
+		    		query(db -> db.acceptAnswer(id, answerID))
+		    				.thenAccept(accepted -> {
+		    					if (accepted) {
+		    						show(primaryStage);
+		    					} else {
+		    						showAnswerError("That answer could not be accepted; it may have been deleted");
+		    					}
+		    				})
+		    				.exceptionally(error -> {
+		    					showAnswerError("Could not accept the answer: " + AsyncDatabase.unwrap(error).getMessage());
+		    					return AsyncDatabase.logFailure(error);
+		    				});
                 });
             	vbox.getChildren().addAll(answerUserLabel, answerContentLabel, answeredButton);
             } else {
@@ -293,13 +383,10 @@ public class QuestionsAnswersPage {
         addAnswerButton.setOnAction(a -> {
     		// Create new answer and add it to the database
     		Answer answer = new Answer(id, userName, newAnswerText.getText());
-    		try {
-    			qaDatabase.addAnswer(answer);
-    		} catch (SQLException e) {
-    			e.printStackTrace();
-    		}
     		newAnswerText.clear();
-    		printQuestion(info, primaryStage, id);
+    		update(db -> db.addAnswer(answer))
+    				.thenRun(() -> openQuestion(id, primaryStage))
+    				.exceptionally(AsyncDatabase::logFailure);
     	
         });
         
@@ -307,7 +394,7 @@ public class QuestionsAnswersPage {
         Button viewCommentsButton = new Button("View Feedback");
         viewCommentsButton.setOnAction(a -> {
     		// prints question and comments 
-    		printCommentPage(info, primaryStage, id);
+    		printCommentPage(thread, primaryStage);
     	
         });
         vbox.getChildren().addAll(newAnswerText, addAnswerButton, viewCommentsButton);
@@ -316,8 +403,10 @@ public class QuestionsAnswersPage {
         Button updateButton = new Button("Update Question");
         updateButton.setOnAction(a -> {
         	if (!(newAnswerText.getText().isEmpty())) {
-        		qaDatabase.updateQuestion(id, newAnswerText.getText());
-        		show(primaryStage);
+        		String updatedBody = newAnswerText.getText();
+        		update(db -> db.updateQuestion(id, updatedBody))
+        				.thenRun(() -> show(primaryStage))
+        				.exceptionally(AsyncDatabase::logFailure);
         	} else {
         		errorLabel.setText("Must have an input to update question");
         		vbox.getChildren().add(errorLabel);
@@ -325,14 +414,14 @@ public class QuestionsAnswersPage {
         });
 
         // If the user wrote the post, give them special permissions
-        if (qaDatabase.doesUserOwnQuestion(id, userName)) {
+        if (thread.isViewerOwner()) {
         	
         	// Allow the updating of the question
         	newAnswerText.setPromptText("Answer or Update the Question");
             vbox.getChildren().addAll(updateButton, deleteButton);
             
             // Allow the resolving/ unresolving of the question
-            if (!(qaDatabase.isResolved(id))) {
+            if (!(thread.isResolved())) {
             	vbox.getChildren().add(resolveButton);
             } else {
             	vbox.getChildren().add(unResolveButton);
@@ -342,22 +431,23 @@ public class QuestionsAnswersPage {
     }
 
 // comment page that shows comments under the question chosen
- public void printCommentPage(String[] info, Stage primaryStage, int id) {
+ public void printCommentPage(QuestionThread thread, Stage primaryStage) {
+    	int id = thread.getID();
     	
         // Clear the vbox initially
         vbox.getChildren().clear();
         vbox.setAlignment(Pos.CENTER_LEFT);
 
         // Create labels for title, user name, and body
-        Label titleLabel = new Label(info[1]);
+        Label titleLabel = new Label(thread.getTitle());
         titleLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 16px;");
         titleLabel.setWrapText(true);
 
-        Label userNameLabel = new Label(info[0]);
+        Label userNameLabel = new Label(thread.getUserName());
         userNameLabel.setStyle("-fx-font-size: 14px;");
         userNameLabel.setWrapText(true);
         
-        Label bodyLabel = new Label(info[2]);
+        Label bodyLabel = new Label(thread.getBody());
         bodyLabel.setWrapText(true);
         bodyLabel.setWrapText(true);
         
@@ -367,29 +457,15 @@ public class QuestionsAnswersPage {
 
         vbox.getChildren().addAll(titleLabel, userNameLabel, bodyLabel, separator);
 
-        // Array list to hold comments
-        List<String[]> comments = qaDatabase.getComments(id);
-
         // Loop through comments and create user name and content labels for each
-        for (int i = 0; i < comments.size(); i++) {
-        	final int commentCount = i;
-        	String[] comment = comments.get(i);
-        	
-            Label commentUserLabel = new Label(comment[0]);
+        for (Comment comment : thread.getComments()) {
+            Label commentUserLabel = new Label(comment.getUserName());
             commentUserLabel.setWrapText(true);
             
-            Label commentContentLabel = new Label("     " + comment[1]);
+            Label commentContentLabel = new Label("     " + comment.getContent());
             commentContentLabel.setWrapText(true);
             
-            int commentID = qaDatabase.getCommentID(id, commentCount);
-            if (qaDatabase.doesAnswerResolve(commentID)) {
-            	commentUserLabel.setStyle("-fx-font-weight: bold;");
-            	commentContentLabel.setStyle("-fx-font-weight: bold;");
-            }
-            
-            
-            	vbox.getChildren().addAll(commentUserLabel, commentContentLabel);
-            
+            vbox.getChildren().addAll(commentUserLabel, commentContentLabel);
         }
 
         // Text area to enter the comment content
@@ -405,19 +481,16 @@ public class QuestionsAnswersPage {
         addCommentButton.setOnAction(a -> {
     		// Create new comment and add it to the database
     		Comment comment = new Comment(id, userName, newCommentText.getText());
-    		try {
-    			qaDatabase.addComments(comment);
-    		} catch (SQLException e) {
-    			e.printStackTrace();
-    		}
     		newCommentText.clear();
-    		printCommentPage(info, primaryStage, id);
+    		update(db -> db.addComments(comment))
+    				.thenRun(() -> openCommentPage(id, primaryStage))
+    				.exceptionally(AsyncDatabase::logFailure);
     	
         });
 
         Button viewAnswersButton = new Button("View Answers");
         viewAnswersButton.setOnAction(a -> {
-    		printQuestion(info, primaryStage, id);
+    		openQuestion(id, primaryStage);
     	
         });
         
@@ -458,13 +531,9 @@ public class QuestionsAnswersPage {
             
             } else {
                 Question q = new Question(userName, titleText.getText(), bodyText.getText());
-                try {
-                	qaDatabase.addQuestion(q);
-
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-                show(primaryStage);
+                update(db -> db.addQuestion(q))
+                		.thenRun(() -> show(primaryStage))
+                		.exceptionally(AsyncDatabase::logFailure);
             }
 
         });
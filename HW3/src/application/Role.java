@@ -0,0 +1,87 @@
+package application;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The Role enum lists the roles a user can hold. Each role owns one bit, so a user's
+ * roles are stored in the database as a single integer mask.
+ */
+public enum Role {
+	ADMIN("admin", 1),
+	STUDENT("student", 2),
+	INSTRUCTOR("instructor", 4),
+	STAFF("staff", 8),
+	REVIEWER("reviewer", 16);
+
+	private final String label;
+	private final int bit;
+
+	Role(String label, int bit) {
+		this.label = label;
+		this.bit = bit;
+	}
+
+	// The lower case name shown to users, e.g. "admin"
+	public String getLabel() { return label; }
+
+	// The bit this role sets in a role mask
+	public int getBit() { return bit; }
+
+	// Return the role with a given label, or null if there is none
+	public static Role fromLabel(String label) {
+		for (Role role : values()) {
+			if (role.label.equals(label.trim())) {
+				return role;
+			}
+		}
+		return null;
+	}
+
+	// Combine a set of roles into a mask
+	public static int toMask(Set<Role> roles) {
+		int mask = 0;
+		for (Role role : roles) {
+			mask |= role.bit;
+		}
+		return mask;
+	}
+
+	// Split a mask back into its roles
+	public static EnumSet<Role> fromMask(int mask) {
+		EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+		for (Role role : values()) {
+			if ((mask & role.bit) != 0) {
+				roles.add(role);
+			}
+		}
+		return roles;
+	}
+
+	// Parse a comma separated list such as "admin, student"; unknown names are ignored
+	public static EnumSet<Role> parse(String text) {
+		EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+		if (text == null) {
+			return roles;
+		}
+		for (String part : text.split(",")) {
+			Role role = fromLabel(part);
+			if (role != null) {
+				roles.add(role);
+			}
+		}
+		return roles;
+	}
+
+	// Format roles as a comma separated list such as "admin, student"
+	public static String format(Set<Role> roles) {
+		StringBuilder sb = new StringBuilder();
+		for (Role role : roles) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(role.label);
+		}
+		return sb.toString();
+	}
+}
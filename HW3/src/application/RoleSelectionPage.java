@@ -8,7 +8,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 import databasePart1.*;
-import java.util.Arrays;
 
 /**
  * This page displays a simple welcome message for the Instructor.
@@ -28,15 +27,12 @@ public class RoleSelectionPage {
 	    InvalidRoleError.setStyle("-fx-font-size: 16px; -fx-text-fill: rgb(255,100,100);");
 	    InvalidRoleError.setTextAlignment(TextAlignment.CENTER);
 
-		String role =user.getRole();
-	    String[] roleList = databaseHelper.roleToArray(role);
 
 
 	    //button to send to admin page
 	    Button AdminButton = new Button("Admin");
 	    AdminButton.setOnAction(a -> {
-	    	String target = "admin";
-	    	boolean hasRole = Arrays.asList(roleList).contains(target);
+	    	boolean hasRole = user.hasRole(Role.ADMIN);
 
 	    	if(hasRole) {
 	    	new AdminHomePage().show(databaseHelper, primaryStage);
@@ -49,8 +45,7 @@ public class RoleSelectionPage {
 
 	    Button StudentButton = new Button("Student");
 	    StudentButton.setOnAction(a -> {
-	    	String target = "student";
-	    	boolean hasRole = Arrays.asList(roleList).contains(target);
+	    	boolean hasRole = user.hasRole(Role.STUDENT);
 
 	    	if(hasRole) {
 	    	new StudentHomePage().show(databaseHelper, primaryStage);
@@ -63,8 +58,7 @@ public class RoleSelectionPage {
 
 	    Button StaffButton = new Button("Staff");
 	    StaffButton.setOnAction(a -> {
-	    	String target = "staff";
-	    	boolean hasRole = Arrays.asList(roleList).contains(target);
+	    	boolean hasRole = user.hasRole(Role.STAFF);
 
 	    	if(hasRole) {
 	    	new StaffHomePage().show(databaseHelper, primaryStage);
@@ -77,8 +71,7 @@ public class RoleSelectionPage {
 
 	    Button InstructorButton = new Button("Instructor");
 	    InstructorButton.setOnAction(a -> {
-	    	String target = "instructor";
-	    	boolean hasRole = Arrays.asList(roleList).contains(target);
+	    	boolean hasRole = user.hasRole(Role.INSTRUCTOR);
 
 	    	if(hasRole) {
 	    	new InstructorHomePage().show(databaseHelper, primaryStage);
@@ -91,8 +84,7 @@ public class RoleSelectionPage {
 
 	    Button ReviewerButton = new Button("Instructor");
 	    ReviewerButton.setOnAction(a -> {
-	    	String target = "reviewer";
-	    	boolean hasRole = Arrays.asList(roleList).contains(target);
+	    	boolean hasRole = user.hasRole(Role.REVIEWER);
 
 	    	if(hasRole) {
 	    	new ReviewerHomePage().show(databaseHelper, primaryStage);
@@ -114,7 +106,6 @@ public class RoleSelectionPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 
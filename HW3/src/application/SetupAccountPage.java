@@ -6,8 +6,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -85,33 +83,31 @@ public class SetupAccountPage {
             
             String code = inviteCodeField.getText();
             
-            try {
+            User user=new User(userName, password, "");
+            
+            // Check the user name and invitation code and register off the UI thread.
+            // The result is an error message, or null once the user is registered
+            databaseHelper.async().supply(db -> {
             	// Check if the user already exists
-            	if(!databaseHelper.doesUserExist(userName)) {
-            		
-            		// Validate the invitation code
-            		if(databaseHelper.validateInvitationCode(code)) {
-            			
-            			// Create a new user and register them in the database
-		            	User user=new User(userName, password, databaseHelper.getRoleFromCode(code));
-		                databaseHelper.register(user);
-		                databaseHelper.assignRolesFromCodeToUser(userName,code);
-		                
-		             // Navigate to the Welcome Login Page
-		                new WelcomeLoginPage(databaseHelper).show(primaryStage,user);
-            		}
-            		else {
-            			userpassErrors.setText("Please enter a valid invitation code");
-            		}
+            	if(db.doesUserExist(userName)) {
+            		return "This useruserName is taken!!.. Please use another to setup an account";
+            	}
+            	
+            	// Redeem the invitation code and register the user with the roles it grants in one transaction,
+            	// so the code stays unused if the user cannot be registered
+            	if(db.registerWithInvitationCode(user, code) == null) {
+            		return "Please enter a valid invitation code";
+            	}
+            	return null;
+            }).thenAccept(error -> {
+            	if (error == null) {
+            		// Navigate to the Welcome Login Page
+            		new WelcomeLoginPage(databaseHelper).show(primaryStage,user);
             	}
             	else {
-            		userpassErrors.setText("This useruserName is taken!!.. Please use another to setup an account");
+            		userpassErrors.setText(error);
             	}
-            	
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            }
+            }).exceptionally(AsyncDatabase::logFailure);
         });
 
         VBox layout = new VBox(10);
@@ -1,10 +1,12 @@
 package application;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
-import java.sql.SQLException;
 
+import databasePart1.AsyncDatabase;
 import databasePart1.DatabaseHelper;
+import databasePart1.DatabaseServer;
 
 
 public class StartCSE360 extends Application {
@@ -18,19 +20,41 @@ public class StartCSE360 extends Application {
 	
 	@Override
     public void start(Stage primaryStage) {
-        try {
-            databaseHelper.connectToDatabase(); // Connect to the database
-            if (databaseHelper.isDatabaseEmpty()) {
+        // Deliver database results on the JavaFX Application Thread
+        AsyncDatabase.setCallbackExecutor(Platform::runLater);
+        
+        // Connect to the database off the UI thread, then pick the first page
+        // In host mode both databases are opened, which creates them, before the TCP server starts,
+        // since other instances can only open databases that already exist
+        databaseHelper.async().supply(db -> {
+            db.connectToDatabase();
+            if (DatabaseServer.shared().getMode() == DatabaseServer.Mode.HOST) {
+                QuestionsAnswersPage.openDatabase();
+            }
+            DatabaseServer.shared().start();
+            return db.isDatabaseEmpty();
+        }).thenAccept(empty -> {
+            if (empty) {
             	
             	new FirstPage(databaseHelper).show(primaryStage);
             } else {
             	new SetupLoginSelectionPage(databaseHelper).show(primaryStage);
                 
             }
-        } catch (SQLException e) {
-        	System.out.println(e.getMessage());
-        }
+        }).exceptionally(e -> {
+            System.out.println(e.getMessage());
+            return null;
+        });
     }
 	
+	// Runs when the application exits, including through Platform.exit() on every Quit button,
+	// so queued answers and comments are committed before the databases close
+	@Override
+	public void stop() {
+		QuestionsAnswersPage.closeDatabase();
+		databaseHelper.closeConnection();
+		DatabaseServer.shared().stop();
+	}
+	
 
 }
@@ -1,27 +1,42 @@
 package application;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * The User class represents a user entity in the system.
- * It contains the user's details such as userName, password, and role.
+ * It contains the user's details such as userName, password, and roles.
  */
 public class User {
     private String userName;
     private String password;
-    private String role;
+    private EnumSet<Role> roles;
 
-    // Constructor to initialize a new User object with userName, password, and role.
+    // Constructor to initialize a new User object with userName, password, and a comma separated role list.
     public User( String userName, String password, String role) {
+        this(userName, password, Role.parse(role));
+    }
+
+    // Constructor to initialize a new User object with userName, password, and a set of roles.
+    public User(String userName, String password, Set<Role> roles) {
         this.userName = userName;
         this.password = password;
-        this.role = role;
+        this.roles = roles.isEmpty() ? EnumSet.noneOf(Role.class) : EnumSet.copyOf(roles);
     }
-    
-    // Sets the role of the user.
+
+    // Sets the roles of the user from a comma separated role list.
     public void setRole(String role) {
-    	this.role=role;
+    	this.roles = Role.parse(role);
+    }
+
+    // Sets the roles of the user.
+    public void setRoles(Set<Role> roles) {
+    	this.roles = roles.isEmpty() ? EnumSet.noneOf(Role.class) : EnumSet.copyOf(roles);
     }
 
     public String getUserName() { return userName; }
     public String getPassword() { return password; }
-    public String getRole() { return role; }
+    public String getRole() { return Role.format(roles); }
+    public EnumSet<Role> getRoles() { return EnumSet.copyOf(roles); }
+    public boolean hasRole(Role role) { return roles.contains(role); }
 }
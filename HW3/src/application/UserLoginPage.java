@@ -6,8 +6,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
-
 import databasePart1.*;
 
 /**
@@ -76,33 +74,25 @@ public class UserLoginPage {
             	return;
             }
             
-            try {
-            	User user=new User(userName, password, "");
-            	WelcomeLoginPage welcomeLoginPage = new WelcomeLoginPage(databaseHelper);
-            	
-            	// Retrieve the user's role from the database using userName
-            	String role = databaseHelper.getUserRole(userName);
-            	System.out.println("role: " + role);
-            	
-            	if(role!=null) {
-            		user.setRole(role);
-            		if(databaseHelper.login(user)) {
-            			welcomeLoginPage.show(primaryStage,user);
-            		}
-            		else {
-            			// Display an error if the login fails
-            			userpassErrors.setText("Error logging in");
-            		}
+            WelcomeLoginPage welcomeLoginPage = new WelcomeLoginPage(databaseHelper);
+            
+            // Check the credentials off the UI thread in a single lookup
+            databaseHelper.async().supply(db -> db.authentication().authenticate(userName, password)).thenAccept(user -> {
+            	if(user==null) {
+            		// Display the same error for unknown accounts and wrong passwords
+            		userpassErrors.setText("Invalid user name or password");
             	}
             	else {
-            		// Display an error if the account does not exist
-            		userpassErrors.setText("Account doesn't exist");
+            		welcomeLoginPage.show(primaryStage,user);
+            	}
+            }).exceptionally(error -> {
+            	// Too many failed attempts: tell the user instead of logging a database error
+            	if (AsyncDatabase.unwrap(error) instanceof ThrottledException) {
+            		userpassErrors.setText(AsyncDatabase.unwrap(error).getMessage());
+            		return null;
             	}
-            	
-            } catch (SQLException e) {
-                System.err.println("Database error: " + e.getMessage());
-                e.printStackTrace();
-            } 
+            	return AsyncDatabase.logFailure(error);
+            });
         });
         
         // Create a button to send user to OneTimeLogin page
@@ -6,6 +6,7 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.application.Platform;
 import databasePart1.*;
+import java.util.EnumSet;
 /**
  * The WelcomeLoginPage class displays a welcome screen for authenticated users.
  * It allows users to navigate to their respective pages based on their role or quit the application.
@@ -28,30 +29,26 @@ public class WelcomeLoginPage {
 	    // Button to navigate to the user's respective page based on their role
 	    Button continueButton = new Button("Continue to your Page");
 	    continueButton.setOnAction(a -> {
-	    	String role =user.getRole();
-	    	System.out.println(role);
-	    	String[] roleList = databaseHelper.roleToArray(role); //gets role list as an array
-	    	int numberOfRoles = roleList.length;
+	    	EnumSet<Role> roles = user.getRoles();
+	    	System.out.println(user.getRole());
 
 	    	//if statement checks if more than 1 role assigned if <2 sends checks for role assigned
 	    	//then sends them to correct page
-	    	if(numberOfRoles < 2) {
-	    		String onlyRole = String.valueOf(roleList[0]);
-
-	    		switch (onlyRole) {
-	    		    case "admin":
+	    	if(roles.size() == 1) {
+	    		switch (roles.iterator().next()) {
+	    		    case ADMIN:
 	    		    	new AdminHomePage().show(databaseHelper, primaryStage);
 	    		    	break;
-	    		    case "student":
+	    		    case STUDENT:
 	    		    	new StudentHomePage().show(databaseHelper, primaryStage);
 	    		    	break;
-	    		    case "staff":
+	    		    case STAFF:
 	    		    	new StaffHomePage().show(databaseHelper, primaryStage);
 	    		    	break;
-	    		    case "instructor":
+	    		    case INSTRUCTOR:
 	    		    	new InstructorHomePage().show(databaseHelper, primaryStage);
 	    		    	break;
-	    		    case "reviewer":
+	    		    case REVIEWER:
 	    		    	new ReviewerHomePage().show(databaseHelper, primaryStage);
 	    		}
 	    	}
@@ -68,7 +65,6 @@ public class WelcomeLoginPage {
 	    // Button to quit the application
 	    Button quitButton = new Button("Quit");
 	    quitButton.setOnAction(a -> {
-	    	databaseHelper.closeConnection();
 	    	Platform.exit(); // Exit the JavaFX application
 	    });
 
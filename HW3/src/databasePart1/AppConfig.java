@@ -0,0 +1,306 @@
+package databasePart1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * The AppConfig class holds the runtime settings of the database layer: where the databases are, the
+ * connection pools and caches, H2 storage tuning, and the write options.
+ * Each setting has a default that can be overridden, from lowest to highest priority, by a properties
+ * file, an environment variable, and a system property. The file is the one named by -Dcse360.config
+ * (or CSE360_CONFIG), else cse360.properties in the working directory if there is one. The environment
+ * variable for a key is the key in upper case with dots replaced by underscores, so cse360.pool.size
+ * becomes CSE360_POOL_SIZE.
+ * Every value is checked when the configuration is loaded, and all problems are reported together.
+ */
+public class AppConfig {
+
+	/**
+	 * One named, typed setting with its default and its validation.
+	 */
+	public static final class Setting<T> {
+		private final String key;
+		private final String defaultValue;
+		private final Function<String, T> parser;
+		private final boolean secret;
+
+		private Setting(String key, String defaultValue, Function<String, T> parser, boolean secret) {
+			this.key = key;
+			this.defaultValue = defaultValue;
+			this.parser = parser;
+			this.secret = secret;
+			SETTINGS.add(this);
+		}
+
+		public String getKey() { return key; }
+
+		// The environment variable that overrides this setting
+		public String getEnvironmentName() {
+			return key.toUpperCase(Locale.ROOT).replace('.', '_');
+		}
+	}
+
+	// Every setting, in the order they are dumped
+	private static final List<Setting<?>> SETTINGS = new ArrayList<>();
+
+	// Where the databases are; see DatabaseServer
+	public static final Setting<DatabaseServer.Mode> DB_MODE = enumSetting("cse360.db.mode", DatabaseServer.Mode.EMBEDDED, DatabaseServer.Mode.class);
+	public static final Setting<String> DB_HOST = stringSetting("cse360.db.host", "localhost");
+	public static final Setting<Integer> DB_PORT = intSetting("cse360.db.port", 9092, 1, 65535);
+	public static final Setting<Boolean> DB_ALLOW_OTHERS = booleanSetting("cse360.db.allowOthers", false);
+
+	// Full JDBC URLs; when set they replace the URL the mode would give
+	public static final Setting<String> FOUNDATION_URL = stringSetting("cse360.db.foundation.url", "");
+	public static final Setting<String> QUESTIONS_URL = stringSetting("cse360.db.questions.url", "");
+
+	// Database credentials
+	public static final Setting<String> DB_USER = stringSetting("cse360.db.user", "sa");
+	public static final Setting<String> DB_PASSWORD = new Setting<>("cse360.db.password", "", value -> value, true);
+
+	// H2 storage tuning added to the URLs: cache in KB, page size in bytes (only used when a database
+	// is created), and how long to wait for a lock. 0 leaves H2's own default
+	public static final Setting<Integer> H2_CACHE_SIZE = intSetting("cse360.h2.cacheSize", 0, 0, 16 * 1024 * 1024);
+	public static final Setting<Integer> H2_PAGE_SIZE = intSetting("cse360.h2.pageSize", 0, 0, 1024 * 1024);
+	public static final Setting<Integer> H2_LOCK_TIMEOUT = intSetting("cse360.h2.lockTimeoutMillis", 0, 0, 10 * 60 * 1000);
+
+	// Connection pools
+	public static final Setting<Integer> POOL_SIZE = intSetting("cse360.pool.size", 10, 1, 1000);
+	public static final Setting<Long> POOL_BORROW_TIMEOUT = longSetting("cse360.pool.borrowTimeoutMillis", 5000, 0, Long.MAX_VALUE);
+	public static final Setting<Long> POOL_IDLE_TIMEOUT = longSetting("cse360.pool.idleTimeoutMillis", 60000, 1000, Long.MAX_VALUE);
+	public static final Setting<Integer> STATEMENT_CACHE_SIZE = intSetting("cse360.pool.statementCacheSize", 32, 1, 10000);
+
+	// Caches
+	public static final Setting<Long> THREAD_CACHE_BYTES = longSetting("cse360.cache.threadBytes", 4L * 1024 * 1024, 0, Long.MAX_VALUE);
+	public static final Setting<Integer> CODE_POOL_SIZE = intSetting("cse360.cache.invitationCodes", 512, 1, 1_000_000);
+
+	// One time passwords
+	public static final Setting<Long> OTP_TTL = longSetting("cse360.otp.ttlMillis", 15 * 60 * 1000, 1000, Long.MAX_VALUE);
+	public static final Setting<Long> OTP_TICK = longSetting("cse360.otp.tickMillis", 1000, 10, 60 * 1000);
+	public static final Setting<Integer> OTP_WHEEL_SLOTS = intSetting("cse360.otp.wheelSlots", 1024, 1, 1 << 20);
+	public static final Setting<Boolean> OTP_PERSISTENT = booleanSetting("cse360.otp.persistent", true);
+
+	// Password hashing and login throttling
+	public static final Setting<Long> HASH_TARGET = longSetting("cse360.hash.targetMillis", 100, 1, 10_000);
+	// A fixed iteration count instead of calibrating to the target; 0 calibrates. Low values are for tests only
+	public static final Setting<Integer> HASH_ITERATIONS = intSetting("cse360.hash.iterations", 0, 0, 5_000_000);
+	public static final Setting<Integer> HASH_THREADS = intSetting("cse360.hash.threads", Runtime.getRuntime().availableProcessors(), 1, 1024);
+	public static final Setting<Integer> HASH_QUEUE_CAPACITY = intSetting("cse360.hash.queueCapacity", 256, 1, 1_000_000);
+	public static final Setting<Integer> THROTTLE_MAX_FAILURES = intSetting("cse360.throttle.maxFailures", 5, 1, 1000);
+	public static final Setting<Long> THROTTLE_WINDOW = longSetting("cse360.throttle.windowMillis", 5 * 60 * 1000, 1000, Long.MAX_VALUE);
+
+	// Write options for new answers and comments; see WriteBehindQueue
+	public static final Setting<Boolean> WRITE_BEHIND_ENABLED = booleanSetting("cse360.writeBehind.enabled", false);
+	public static final Setting<Integer> WRITE_BEHIND_CAPACITY = intSetting("cse360.writeBehind.capacity", 1000, 1, 1_000_000);
+	public static final Setting<Integer> WRITE_BEHIND_MAX_BATCH = intSetting("cse360.writeBehind.maxBatch", 200, 1, 1_000_000);
+	public static final Setting<Long> WRITE_BEHIND_MAX_DELAY = longSetting("cse360.writeBehind.maxDelayMillis", 5, 0, 60 * 1000);
+	public static final Setting<WriteBehindQueue.Durability> WRITE_BEHIND_DURABILITY =
+			enumSetting("cse360.writeBehind.durability", WriteBehindQueue.Durability.ON_COMMIT, WriteBehindQueue.Durability.class);
+	public static final Setting<WriteBehindQueue.Backpressure> WRITE_BEHIND_BACKPRESSURE =
+			enumSetting("cse360.writeBehind.backpressure", WriteBehindQueue.Backpressure.BLOCK, WriteBehindQueue.Backpressure.class);
+
+	// Background clean-up and file compaction; see MaintenanceService
+	public static final Setting<Boolean> MAINTENANCE_ENABLED = booleanSetting("cse360.maintenance.enabled", true);
+	public static final Setting<Long> MAINTENANCE_INTERVAL = longSetting("cse360.maintenance.intervalMillis", 10 * 60 * 1000, 1000, Long.MAX_VALUE);
+	public static final Setting<Integer> MAINTENANCE_CHUNK_SIZE = intSetting("cse360.maintenance.chunkSize", 500, 1, 100_000);
+	public static final Setting<Long> MAINTENANCE_ARCHIVE_AFTER = longSetting("cse360.maintenance.archiveAfterMillis", 24 * 60 * 60 * 1000, 0, Long.MAX_VALUE);
+	public static final Setting<Boolean> MAINTENANCE_COMPACT = booleanSetting("cse360.maintenance.compact", true);
+	public static final Setting<Integer> MAINTENANCE_COMPACT_GROWTH = intSetting("cse360.maintenance.compactGrowthPercent", 50, 1, 10_000);
+
+	static final String CONFIG_FILE_PROPERTY = "cse360.config";
+	static final String DEFAULT_CONFIG_FILE = "cse360.properties";
+
+	private final Map<Setting<?>, Object> values = new HashMap<>();
+	private final Map<Setting<?>, String> sources = new HashMap<>();
+
+	private static AppConfig current = null;
+
+	// Resolve every setting from the given sources. System properties win over the environment,
+	// the environment over the file, and the file over the default
+	AppConfig(Properties file, String fileName, Map<String, String> environment, Properties system) {
+		List<String> errors = new ArrayList<>();
+		for (Setting<?> setting : SETTINGS) {
+			String source = "default";
+			String raw = setting.defaultValue;
+			if (system.getProperty(setting.key) != null) {
+				source = "system property";
+				raw = system.getProperty(setting.key);
+			} else if (environment.get(setting.getEnvironmentName()) != null) {
+				source = "environment " + setting.getEnvironmentName();
+				raw = environment.get(setting.getEnvironmentName());
+			} else if (file.getProperty(setting.key) != null) {
+				source = fileName;
+				raw = file.getProperty(setting.key);
+			}
+			try {
+				values.put(setting, setting.parser.apply(raw.trim()));
+				sources.put(setting, source);
+			} catch (IllegalArgumentException e) {
+				errors.add(setting.key + " = '" + (setting.secret ? "****" : raw) + "' from " + source + ": " + e.getMessage());
+			}
+		}
+		if (errors.isEmpty()) {
+			validateTogether(errors);
+		}
+		if (!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid configuration:\n  " + String.join("\n  ", errors));
+		}
+	}
+
+	// The configuration for this process, loaded and logged the first time it is asked for
+	public static synchronized AppConfig get() {
+		if (current == null) {
+			current = load();
+			System.out.println(current.dump());
+		}
+		return current;
+	}
+
+	// Load the configuration file, environment and system properties
+	public static AppConfig load() {
+		String fileName = System.getProperty(CONFIG_FILE_PROPERTY, System.getenv("CSE360_CONFIG"));
+		boolean required = fileName != null;
+		if (fileName == null) {
+			fileName = DEFAULT_CONFIG_FILE;
+		}
+		Properties file = new Properties();
+		File path = new File(fileName);
+		if (path.isFile()) {
+			try (InputStream in = new FileInputStream(path)) {
+				file.load(in);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read configuration file " + path.getAbsolutePath(), e);
+			}
+		} else if (required) {
+			throw new IllegalArgumentException("Configuration file " + path.getAbsolutePath() + " does not exist");
+		}
+		return new AppConfig(file, path.getName(), System.getenv(), System.getProperties());
+	}
+
+	// Defaults with some settings replaced, ignoring files, the environment and system properties
+	public static AppConfig of(Properties overrides) {
+		return new AppConfig(overrides, "overrides", Collections.emptyMap(), new Properties());
+	}
+
+	// The value of a setting
+	@SuppressWarnings("unchecked")
+	public <T> T get(Setting<T> setting) {
+		return (T) values.get(setting);
+	}
+
+	// The JDBC URL for a database: the explicit URL setting if there is one, else the URL for the
+	// configured mode, with the H2 tuning added either way
+	public String databaseUrl(Setting<String> explicitUrl, String name) {
+		String url = get(explicitUrl).isEmpty() ? server().url(name) : get(explicitUrl);
+		return withH2Settings(url);
+	}
+
+	// True if other processes may write to the database at this URL, so nothing read from it can be kept
+	// in memory here: any mode but EMBEDDED, or a URL that reaches an H2 server
+	public boolean isShared(String url) {
+		return get(DB_MODE) != DatabaseServer.Mode.EMBEDDED || url.startsWith("jdbc:h2:tcp:") || url.startsWith("jdbc:h2:ssl:");
+	}
+
+	// Where the databases are, as configured
+	public DatabaseServer server() {
+		return new DatabaseServer(get(DB_MODE), get(DB_HOST), get(DB_PORT), get(DB_ALLOW_OTHERS));
+	}
+
+	// Every setting with its effective value and where the value came from; secrets are masked
+	public String dump() {
+		StringBuilder result = new StringBuilder("Effective configuration:\n");
+		for (Setting<?> setting : SETTINGS) {
+			Object value = values.get(setting);
+			result.append("  ").append(setting.key).append(" = ")
+					.append(setting.secret && !value.toString().isEmpty() ? "****" : value)
+					.append(" (").append(sources.get(setting)).append(")\n");
+		}
+		return result.toString();
+	}
+
+	// Checks that involve more than one setting
+	private void validateTogether(List<String> errors) {
+		if (get(WRITE_BEHIND_MAX_BATCH) > get(WRITE_BEHIND_CAPACITY)) {
+			errors.add(WRITE_BEHIND_MAX_BATCH.key + " must not be larger than " + WRITE_BEHIND_CAPACITY.key);
+		}
+		int pageSize = get(H2_PAGE_SIZE);
+		if (pageSize != 0 && Integer.bitCount(pageSize) != 1) {
+			errors.add(H2_PAGE_SIZE.key + " must be a power of two");
+		}
+	}
+
+	// Add the H2 tuning settings that are set, unless the URL already names them
+	private String withH2Settings(String url) {
+		StringBuilder result = new StringBuilder(url);
+		appendH2Setting(result, "CACHE_SIZE", get(H2_CACHE_SIZE));
+		appendH2Setting(result, "PAGE_SIZE", get(H2_PAGE_SIZE));
+		appendH2Setting(result, "LOCK_TIMEOUT", get(H2_LOCK_TIMEOUT));
+		return result.toString();
+	}
+
+	private static void appendH2Setting(StringBuilder url, String name, int value) {
+		if (value > 0 && !url.toString().toUpperCase(Locale.ROOT).contains(";" + name + "=")) {
+			url.append(';').append(name).append('=').append(value);
+		}
+	}
+
+	private static Setting<String> stringSetting(String key, String defaultValue) {
+		return new Setting<>(key, defaultValue, value -> value, false);
+	}
+
+	private static Setting<Integer> intSetting(String key, int defaultValue, int min, int max) {
+		return new Setting<>(key, String.valueOf(defaultValue), value -> (int) inRange(value, min, max), false);
+	}
+
+	private static Setting<Long> longSetting(String key, long defaultValue, long min, long max) {
+		return new Setting<>(key, String.valueOf(defaultValue), value -> inRange(value, min, max), false);
+	}
+
+	private static Setting<Boolean> booleanSetting(String key, boolean defaultValue) {
+		return new Setting<>(key, String.valueOf(defaultValue), value -> {
+			if (value.equalsIgnoreCase("true")) {
+				return true;
+			}
+			if (value.equalsIgnoreCase("false")) {
+				return false;
+			}
+			throw new IllegalArgumentException("must be true or false");
+		}, false);
+	}
+
+	private static <E extends Enum<E>> Setting<E> enumSetting(String key, E defaultValue, Class<E> type) {
+		return new Setting<>(key, defaultValue.name(), value -> {
+			try {
+				return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				List<String> names = new ArrayList<>();
+				for (E constant : type.getEnumConstants()) {
+					names.add(constant.name().toLowerCase(Locale.ROOT));
+				}
+				throw new IllegalArgumentException("must be one of " + String.join(", ", names));
+			}
+		}, false);
+	}
+
+	private static long inRange(String value, long min, long max) {
+		long number;
+		try {
+			number = Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("must be a whole number");
+		}
+		if (number < min || number > max) {
+			throw new IllegalArgumentException("must be between " + min + " and " + max);
+		}
+		return number;
+	}
+}
@@ -0,0 +1,122 @@
+package databasePart1;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AsyncDatabase class runs DAO calls off the calling thread and hands the result back
+ * through a callback executor. The application points the callback executor at the JavaFX
+ * Application Thread, so pages can update their controls directly in thenAccept and no JDBC
+ * call ever runs on the UI thread.
+ * Calls run on virtual threads when the JDK has them (Java 21 and later). On older JDKs such as
+ * Java 17 they fall back to a fixed pool of 16 daemon threads, so at most 16 calls run at once and
+ * the rest wait in the pool's queue.
+ *
+ * @param <D> the DAO the calls run against, such as DatabaseHelper or QuestionsAnswersDatabase
+ */
+public class AsyncDatabase<D> {
+
+	// Worker threads used when virtual threads are not available
+	private static final int FALLBACK_THREADS = 16;
+
+	private static final ExecutorService WORKERS = createWorkers();
+
+	// Where results are delivered; runs callbacks inline until the application installs its UI executor
+	private static volatile Executor callbackExecutor = Runnable::run;
+
+	private final D database;
+
+	/**
+	 * A DAO call that returns a value.
+	 */
+	@FunctionalInterface
+	public interface DatabaseCall<D, T> {
+		T call(D database) throws SQLException;
+	}
+
+	/**
+	 * A DAO call with no result.
+	 */
+	@FunctionalInterface
+	public interface DatabaseTask<D> {
+		void run(D database) throws SQLException;
+	}
+
+	public AsyncDatabase(D database) {
+		this.database = database;
+	}
+
+	// Set the executor results are delivered on, e.g. Platform::runLater
+	public static void setCallbackExecutor(Executor executor) {
+		callbackExecutor = executor;
+	}
+
+	// Run a DAO call on a worker thread; the future completes on the callback executor
+	public <T> CompletableFuture<T> supply(DatabaseCall<D, T> call) {
+		CompletableFuture<T> work = CompletableFuture.supplyAsync(() -> {
+			try {
+				return call.call(database);
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		}, WORKERS);
+
+		// Complete the returned future on the callback executor for success and failure alike,
+		// so stages the caller attaches never run on a worker thread
+		CompletableFuture<T> result = new CompletableFuture<>();
+		work.whenComplete((value, error) -> callbackExecutor.execute(() -> {
+			if (error != null) {
+				result.completeExceptionally(unwrap(error));
+			} else {
+				result.complete(value);
+			}
+		}));
+		return result;
+	}
+
+	// Run a DAO call with no result on a worker thread
+	public CompletableFuture<Void> run(DatabaseTask<D> task) {
+		return supply(db -> {
+			task.run(db);
+			return null;
+		});
+	}
+
+	// Print a failed call the same way the synchronous pages do; usable as exceptionally(AsyncDatabase::logFailure)
+	public static <T> T logFailure(Throwable error) {
+		Throwable cause = unwrap(error);
+		System.err.println("Database error: " + cause.getMessage());
+		cause.printStackTrace();
+		return null;
+	}
+
+	// The exception a failed call actually threw, without the CompletionException wrappers
+	public static Throwable unwrap(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	// One virtual thread per call on Java 21+, otherwise a bounded pool of daemon threads.
+	// Either way the connection pools bound how many calls reach the database at once
+	private static ExecutorService createWorkers() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+				Thread t = new Thread(r, "db-worker-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package databasePart1;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import application.Role;
+import application.User;
+
+/**
+ * The AuthenticationService class checks a user's credentials for the login page.
+ * The stored password and roles are read by userName in one query on the unique userName index,
+ * the password is checked against its salted hash in memory, and the signed-in user is returned as a
+ * session principal. User names with too many recent failures are refused before the query runs.
+ * An unknown user name is checked against a dummy hash, so the time taken does not tell which accounts
+ * exist.
+ */
+public class AuthenticationService {
+
+	private final DatabaseHelper databaseHelper;
+
+	public AuthenticationService(DatabaseHelper databaseHelper) {
+		this.databaseHelper = databaseHelper;
+	}
+
+	// Return the signed-in user, or null if the user name does not exist or the password is wrong.
+	// The returned User carries the user's roles but not their password.
+	// A legacy plaintext password, or a hash weaker than the current setting, is rehashed on success.
+	// Throws ThrottledException if the user name has failed too often recently
+	public User authenticate(String userName, String password) throws SQLException {
+		LoginThrottle throttle = databaseHelper.loginThrottle();
+		throttle.check(userName);
+
+		String query = "SELECT password, roles FROM cse360users WHERE userName = ?";
+		String stored = null;
+		int roles = 0;
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(query);
+			pstmt.setString(1, userName);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) {
+					stored = rs.getString("password");
+					roles = rs.getInt("roles");
+				}
+			}
+		}
+		
+		// Hash outside the borrowed connection so slow hashing never holds a pool slot
+		PasswordHasher hasher = databaseHelper.passwordHasher();
+		if (stored == null) {
+			// Hash against a dummy so an unknown name takes as long as a wrong password, and count it
+			// too, so guessing accounts is limited the same way
+			hasher.verifyDummy(password);
+			throttle.recordFailure(userName);
+			return null;
+		}
+		if (!hasher.verify(password, stored)) {
+			throttle.recordFailure(userName);
+			return null;
+		}
+		throttle.recordSuccess(userName);
+		if (hasher.needsRehash(stored)) {
+			rehash(userName, stored, hasher.hash(password));
+		}
+		return new User(userName, "", Role.fromMask(roles));
+	}
+
+	// Replace a stored password with a new hash, unless it was changed in the meantime
+	private void rehash(String userName, String oldValue, String newHash) throws SQLException {
+		String update = "UPDATE cse360users SET password = ? WHERE userName = ? AND password = ?";
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(update);
+			pstmt.setString(1, newHash);
+			pstmt.setString(2, userName);
+			pstmt.setString(3, oldValue);
+			pstmt.executeUpdate();
+		}
+	}
+}
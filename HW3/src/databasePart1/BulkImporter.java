@@ -0,0 +1,366 @@
+package databasePart1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * The BulkImporter class loads a JSONL or CSV dump of questions, answers and comments into the
+ * question and answer database. Rows are sent with JDBC batches on a single connection and committed
+ * every commit interval rows, instead of one autocommit INSERT per row.
+ * Ids from the dump are shifted past the ids already in the database so imported threads never collide
+ * with existing ones, and a question must appear in the dump before its answers and comments.
+ * The dump is scanned once before anything is inserted and the whole id range it needs is reserved up
+ * front, so posts added while an import runs get ids after the range. If an import fails, the rows
+ * committed before the failure stay and the counters on their questions are still recomputed.
+ * User records in a dump are skipped.
+ */
+public class BulkImporter {
+
+	static final int DEFAULT_BATCH_SIZE = 1000;
+	static final int DEFAULT_COMMIT_INTERVAL = 20000;
+
+	private final QuestionsAnswersDatabase database;
+	private final int batchSize;
+	private final int commitInterval;
+
+	public BulkImporter(QuestionsAnswersDatabase database) {
+		this(database, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+	}
+
+	// batchSize rows are sent per executeBatch and the transaction is committed every commitInterval rows
+	public BulkImporter(QuestionsAnswersDatabase database, int batchSize, int commitInterval) {
+		if (batchSize < 1 || commitInterval < batchSize) {
+			throw new IllegalArgumentException("Batch size must be at least 1 and no larger than the commit interval");
+		}
+		this.database = database;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+	}
+
+	// Import a dump file, choosing the format from its extension
+	public Result importFile(Path file) throws IOException, SQLException {
+		return importFile(file, DumpFormat.forFile(file));
+	}
+
+	// Import every record from a reader in the given format. The dump is read twice, so it is copied to a
+	// temporary file first
+	public Result importFrom(Reader reader, DumpFormat format) throws IOException, SQLException {
+		Path copy = Files.createTempFile("import", format == DumpFormat.CSV ? ".csv" : ".jsonl");
+		try {
+			try (Writer out = Files.newBufferedWriter(copy, StandardCharsets.UTF_8)) {
+				reader.transferTo(out);
+			}
+			return importFile(copy, format);
+		} finally {
+			Files.deleteIfExists(copy);
+		}
+	}
+
+	private Result importFile(Path file, DumpFormat format) throws IOException, SQLException {
+		long start = System.nanoTime();
+		Span span;
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			span = scan(format.reader(in));
+		}
+
+		try (PooledConnection connection = database.borrowConnection();
+				BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			DumpFormat.RecordReader records = format.reader(in);
+			Batches batches = new Batches(connection, span);
+			connection.setAutoCommit(false);
+			try {
+				Map<String, String> record;
+				while ((record = records.next()) != null) {
+					batches.add(record);
+				}
+				batches.flush();
+				connection.commit();
+			} catch (SQLException | IOException | RuntimeException e) {
+				connection.rollback();
+				// The chunks committed before the failure still need their counters
+				try {
+					batches.recount();
+				} catch (SQLException recountFailure) {
+					e.addSuppressed(recountFailure);
+				}
+				throw e;
+			}
+			batches.recount();
+
+			Result result = new Result(batches.questions, batches.answers, batches.comments, batches.skipped,
+					System.nanoTime() - start);
+			System.out.println("Imported " + result);
+			return result;
+		} finally {
+			// Counters on imported questions were rewritten directly
+			database.clearThreadCache();
+		}
+	}
+
+	// Find how many ids each table needs: the largest id in the dump plus one for each record without one
+	private static Span scan(DumpFormat.RecordReader records) throws IOException {
+		Span span = new Span();
+		Map<String, String> record;
+		while ((record = records.next()) != null) {
+			switch (record.getOrDefault("type", "")) {
+			case "question": span.questions = span.widen(span.questions, record); break;
+			case "answer": span.answers = span.widen(span.answers, record); break;
+			case "comment": span.comments = span.widen(span.comments, record); break;
+			default: break;
+			}
+		}
+		return span;
+	}
+
+	// The number of ids a dump needs in each table
+	private static final class Span {
+		int questions;
+		int answers;
+		int comments;
+		private int questionsWithoutID;
+		private int answersWithoutID;
+		private int commentsWithoutID;
+
+		int widen(int current, Map<String, String> record) throws IOException {
+			String id = record.get("id");
+			if (id != null) {
+				return Math.max(current, parseInt(id, "id"));
+			}
+			// Records without an id are numbered after the largest id, so count them separately
+			switch (record.get("type")) {
+			case "question": questionsWithoutID++; break;
+			case "answer": answersWithoutID++; break;
+			default: commentsWithoutID++; break;
+			}
+			return current;
+		}
+
+		int questionIDs() { return questions + questionsWithoutID; }
+		int answerIDs() { return answers + answersWithoutID; }
+		int commentIDs() { return comments + commentsWithoutID; }
+	}
+
+	// The three insert batches of one import and the id ranges reserved for it
+	private final class Batches {
+		private final PooledConnection connection;
+		private final PreparedStatement insertQuestion;
+		private final PreparedStatement insertAnswer;
+		private final PreparedStatement insertComment;
+
+		private final Span span;
+		private final int questionOffset;
+		private final int answerOffset;
+		private final int commentOffset;
+		private int nextQuestionID;
+		private int nextAnswerID;
+		private int nextCommentID;
+
+		private int pendingQuestions = 0;
+		private int pendingChildren = 0;
+		private int uncommitted = 0;
+
+		long questions = 0;
+		long answers = 0;
+		long comments = 0;
+		long skipped = 0;
+
+		Batches(PooledConnection connection, Span span) throws SQLException {
+			this.connection = connection;
+			this.span = span;
+			insertQuestion = connection.prepareStatement(
+					"INSERT INTO questions (id, userName, title, body, resolved, deleted) VALUES (?, ?, ?, ?, ?, ?)");
+			insertAnswer = connection.prepareStatement(
+					"INSERT INTO answers (id, qID, userName, content, resolves) VALUES (?, ?, ?, ?, ?)");
+			insertComment = connection.prepareStatement(
+					"INSERT INTO comments (id, qID, userName, content) VALUES (?, ?, ?, ?)");
+			questionOffset = reserve("questions", span.questionIDs());
+			answerOffset = reserve("answers", span.answerIDs());
+			commentOffset = reserve("comments", span.commentIDs());
+			nextQuestionID = questionOffset + span.questions + 1;
+			nextAnswerID = answerOffset + span.answers + 1;
+			nextCommentID = commentOffset + span.comments + 1;
+		}
+
+		void add(Map<String, String> record) throws SQLException, IOException {
+			String type = record.getOrDefault("type", "");
+			switch (type) {
+			case "question": {
+				int id = record.containsKey("id") ? assignID(record, questionOffset, span.questions) : nextQuestionID++;
+				insertQuestion.setInt(1, id);
+				insertQuestion.setString(2, record.get("userName"));
+				insertQuestion.setString(3, record.get("title"));
+				insertQuestion.setString(4, record.get("text"));
+				insertQuestion.setBoolean(5, Boolean.parseBoolean(record.get("resolved")));
+				insertQuestion.setBoolean(6, Boolean.parseBoolean(record.get("deleted")));
+				insertQuestion.addBatch();
+				pendingQuestions++;
+				questions++;
+				break;
+			}
+			case "answer": {
+				int id = record.containsKey("id") ? assignID(record, answerOffset, span.answers) : nextAnswerID++;
+				insertAnswer.setInt(1, id);
+				insertAnswer.setInt(2, questionID(record));
+				insertAnswer.setString(3, record.get("userName"));
+				insertAnswer.setString(4, record.get("text"));
+				insertAnswer.setBoolean(5, Boolean.parseBoolean(record.get("resolves")));
+				insertAnswer.addBatch();
+				pendingChildren++;
+				answers++;
+				break;
+			}
+			case "comment": {
+				int id = record.containsKey("id") ? assignID(record, commentOffset, span.comments) : nextCommentID++;
+				insertComment.setInt(1, id);
+				insertComment.setInt(2, questionID(record));
+				insertComment.setString(3, record.get("userName"));
+				insertComment.setString(4, record.get("text"));
+				insertComment.addBatch();
+				pendingChildren++;
+				comments++;
+				break;
+			}
+			default:
+				skipped++;
+				return;
+			}
+
+			uncommitted++;
+			if (pendingQuestions + pendingChildren >= batchSize) {
+				flush();
+			}
+			if (uncommitted >= commitInterval) {
+				connection.commit();
+				uncommitted = 0;
+			}
+		}
+
+		// Send pending rows; questions go first so their answers and comments can reference them
+		void flush() throws SQLException {
+			if (pendingQuestions > 0) {
+				insertQuestion.executeBatch();
+				pendingQuestions = 0;
+			}
+			if (pendingChildren > 0) {
+				insertAnswer.executeBatch();
+				insertComment.executeBatch();
+				pendingChildren = 0;
+			}
+		}
+
+		// Recompute the counters on the imported questions from the committed answers and comments
+		void recount() throws SQLException {
+			PreparedStatement counters = connection.prepareStatement("UPDATE questions q SET "
+					+ "answerCount = (SELECT COUNT(*) FROM answers a WHERE a.qID = q.id), "
+					+ "commentCount = (SELECT COUNT(*) FROM comments c WHERE c.qID = q.id) "
+					+ "WHERE q.id > ? AND q.id <= ?");
+			counters.setInt(1, questionOffset);
+			counters.setInt(2, questionOffset + span.questionIDs());
+			counters.executeUpdate();
+			connection.commit();
+		}
+
+		// Take the ids after the largest one in use, live or archived, for this import by moving the identity
+		// column past them. If another writer added a row while that was happening, take a range after it
+		private int reserve(String table, int count) throws SQLException {
+			int offset = maxID(table);
+			while (true) {
+				try (Statement stmt = connection.createStatement()) {
+					stmt.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + ((long) offset + count + 1));
+				}
+				int max = maxID(table);
+				if (max == offset) {
+					return offset;
+				}
+				offset = max;
+			}
+		}
+
+		private int maxID(String table) throws SQLException {
+			String query = "SELECT GREATEST((SELECT COALESCE(MAX(id), 0) FROM " + table + "), "
+					+ "(SELECT COALESCE(MAX(id), 0) FROM " + table + "_archive))";
+			try (Statement stmt = connection.createStatement();
+					ResultSet rs = stmt.executeQuery(query)) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		}
+
+		// Shift the dump's id past the existing rows, inside the range the scan found
+		private int assignID(Map<String, String> record, int offset, int scanned) throws IOException {
+			int id = parseInt(record.get("id"), "id");
+			if (id < 1 || id > scanned) {
+				throw new IOException("Id " + id + " is outside the range scanned from the dump: " + record);
+			}
+			return offset + id;
+		}
+
+		private int questionID(Map<String, String> record) throws IOException {
+			String qID = record.get("qID");
+			if (qID == null) {
+				throw new IOException("Answer or comment without a qID: " + record);
+			}
+			int id = parseInt(qID, "qID");
+			// Anything past the scanned questions would land on a question that is not part of this import
+			if (id < 1 || id > span.questions) {
+				throw new IOException("qID " + id + " is not a question in the dump: " + record);
+			}
+			return questionOffset + id;
+		}
+	}
+
+	private static int parseInt(String value, String field) throws IOException {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad " + field + " '" + value + "'", e);
+		}
+	}
+
+	/**
+	 * Row counts and timing for one import.
+	 */
+	public static final class Result {
+		private final long questions;
+		private final long answers;
+		private final long comments;
+		private final long skipped;
+		private final long elapsedNanos;
+
+		Result(long questions, long answers, long comments, long skipped, long elapsedNanos) {
+			this.questions = questions;
+			this.answers = answers;
+			this.comments = comments;
+			this.skipped = skipped;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public long getQuestions() { return questions; }
+		public long getAnswers() { return answers; }
+		public long getComments() { return comments; }
+		public long getSkipped() { return skipped; }
+		public long getRows() { return questions + answers + comments; }
+		public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+		// Imported rows per second of wall clock time
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0.0 : getRows() * 1_000_000_000.0 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return getRows() + " rows (" + questions + " questions, " + answers + " answers, " + comments
+					+ " comments, " + skipped + " skipped) in " + getElapsedMillis() + " ms, "
+					+ String.format("%.0f", getRowsPerSecond()) + " rows/sec";
+		}
+	}
+}
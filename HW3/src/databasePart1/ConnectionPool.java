@@ -0,0 +1,336 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ConnectionPool class hands out a bounded number of JDBC connections to the database helpers.
+ * Connections are borrowed for the length of one DAO call and returned when the PooledConnection is closed.
+ * Idle connections are validated before reuse and evicted once they have been idle for too long.
+ * Opening a connection is retried with a growing delay, so a database server that is restarting
+ * is waited for instead of failing the first call that needs it.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	// Seconds to wait for Connection.isValid before treating a connection as dead
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	// Attempts to open a new connection, and the delay before the first retry, doubled after each one
+	private static final int CONNECT_ATTEMPTS = 4;
+	private static final long CONNECT_RETRY_MILLIS = 250;
+
+	private final String url;
+	private final String user;
+	private final String pass;
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final int statementCacheSize;
+
+	// One permit per connection that may be borrowed at the same time
+	private final Semaphore permits;
+
+	// Idle connections, most recently returned first so the oldest ones age out at the tail
+	private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+
+	// Pool statistics
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong returned = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong borrowTimeouts = new AtomicLong();
+	private final AtomicLong connectRetries = new AtomicLong();
+
+	// Prepared statement cache statistics, summed over every connection in the pool
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+	private final AtomicLong statementEvictions = new AtomicLong();
+
+	// Create a pool for a database URL; connections are opened lazily on first borrow
+	public ConnectionPool(String url, String user, String pass, int maxSize, long borrowTimeoutMillis,
+			long idleTimeoutMillis, int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	// Create a pool for a database URL with the credentials and pool settings of a configuration
+	public static ConnectionPool create(String url, AppConfig config) {
+		return new ConnectionPool(url, config.get(AppConfig.DB_USER), config.get(AppConfig.DB_PASSWORD),
+				config.get(AppConfig.POOL_SIZE), config.get(AppConfig.POOL_BORROW_TIMEOUT),
+				config.get(AppConfig.POOL_IDLE_TIMEOUT), config.get(AppConfig.STATEMENT_CACHE_SIZE));
+	}
+
+	// Borrow a connection, waiting up to the borrow timeout if every connection is in use
+	public PooledConnection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				borrowTimeouts.incrementAndGet();
+				throw new SQLException("Timed out waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection", e);
+		}
+
+		try {
+			PooledConnection pc;
+			while ((pc = idle.pollFirst()) != null) {
+				if (isUsable(pc)) {
+					pc.markBorrowed();
+					borrowed.incrementAndGet();
+					return pc;
+				}
+				validationFailures.incrementAndGet();
+				pc.closePhysical();
+			}
+			pc = new PooledConnection(this, openConnection(), statementCacheSize);
+			created.incrementAndGet();
+			pc.markBorrowed();
+			borrowed.incrementAndGet();
+			return pc;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// Run work on one connection while no other connection is borrowed; every borrow waits until it
+	// is done. Returns false without running the work if any connection is in use. The connection must
+	// not be closed by the work, but may be shut down with the database, after which the pool reopens it
+	public boolean runExclusive(ExclusiveWork work) throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		if (!permits.tryAcquire(maxSize)) {
+			return false;
+		}
+		try {
+			PooledConnection pc;
+			while ((pc = idle.pollFirst()) != null && !isUsable(pc)) {
+				validationFailures.incrementAndGet();
+				pc.closePhysical();
+			}
+			if (pc == null) {
+				pc = new PooledConnection(this, openConnection(), statementCacheSize);
+				created.incrementAndGet();
+			}
+			try {
+				return work.run(pc);
+			} finally {
+				if (pc.getConnection().isClosed()) {
+					pc.closePhysical();
+					// The work shut the database down, so every idle connection is dead too
+					while ((pc = idle.pollFirst()) != null) {
+						pc.closePhysical();
+					}
+				} else {
+					pc.closeStatements();
+					pc.markReturned();
+					idle.offerFirst(pc);
+				}
+			}
+		} finally {
+			permits.release(maxSize);
+		}
+	}
+
+	// Called by PooledConnection.close() to hand the connection back
+	void release(PooledConnection pc) {
+		returned.incrementAndGet();
+		try {
+			Connection c = pc.getConnection();
+			if (closed || c.isClosed()) {
+				pc.closePhysical();
+				return;
+			}
+			// Never hand out a connection with someone else's half-finished transaction
+			if (!c.getAutoCommit()) {
+				c.rollback();
+				c.setAutoCommit(true);
+			}
+			pc.markReturned();
+			idle.offerFirst(pc);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			pc.closePhysical();
+		} finally {
+			permits.release();
+		}
+	}
+
+	// Close connections that have been idle longer than the idle timeout
+	public void evictIdle() {
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+		Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext()) {
+			PooledConnection pc = it.next();
+			if (pc.getLastReturned() < cutoff && idle.remove(pc)) {
+				evicted.incrementAndGet();
+				pc.closePhysical();
+			}
+		}
+	}
+
+	private boolean isUsable(PooledConnection pc) {
+		try {
+			return pc.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private Connection openConnection() throws SQLException {
+		long delay = CONNECT_RETRY_MILLIS;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return DriverManager.getConnection(url, user, pass);
+			} catch (SQLException e) {
+				if (attempt >= CONNECT_ATTEMPTS || closed) {
+					throw e;
+				}
+				connectRetries.incrementAndGet();
+				System.err.println("Could not connect to " + url + ", retrying: " + e.getMessage());
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while reconnecting to the database", e);
+			}
+			delay *= 2;
+		}
+	}
+
+	void recordStatementHit() { statementHits.incrementAndGet(); }
+	void recordStatementMiss() { statementMisses.incrementAndGet(); }
+	void recordStatementEviction() { statementEvictions.incrementAndGet(); }
+
+	// Return a snapshot of the pool statistics
+	public Stats getStats() {
+		int idleCount = idle.size();
+		int active = maxSize - permits.availablePermits();
+		return new Stats(maxSize, active, idleCount, created.get(), borrowed.get(), returned.get(),
+				evicted.get(), validationFailures.get(), borrowTimeouts.get(), connectRetries.get(),
+				statementHits.get(), statementMisses.get(), statementEvictions.get());
+	}
+
+	public String getUrl() { return url; }
+
+	// Close every idle connection and refuse further borrows; borrowed connections close when returned
+	@Override
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			pc.closePhysical();
+		}
+	}
+
+	/**
+	 * Work that needs the database to itself; returns whether it did anything.
+	 */
+	@FunctionalInterface
+	public interface ExclusiveWork {
+		boolean run(PooledConnection connection) throws SQLException;
+	}
+
+	/**
+	 * Point-in-time statistics for a ConnectionPool.
+	 */
+	public static final class Stats {
+		private final int maxSize;
+		private final int active;
+		private final int idle;
+		private final long created;
+		private final long borrowed;
+		private final long returned;
+		private final long evicted;
+		private final long validationFailures;
+		private final long borrowTimeouts;
+		private final long connectRetries;
+		private final long statementHits;
+		private final long statementMisses;
+		private final long statementEvictions;
+
+		Stats(int maxSize, int active, int idle, long created, long borrowed, long returned,
+				long evicted, long validationFailures, long borrowTimeouts, long connectRetries,
+				long statementHits, long statementMisses, long statementEvictions) {
+			this.maxSize = maxSize;
+			this.active = active;
+			this.idle = idle;
+			this.created = created;
+			this.borrowed = borrowed;
+			this.returned = returned;
+			this.evicted = evicted;
+			this.validationFailures = validationFailures;
+			this.borrowTimeouts = borrowTimeouts;
+			this.connectRetries = connectRetries;
+			this.statementHits = statementHits;
+			this.statementMisses = statementMisses;
+			this.statementEvictions = statementEvictions;
+		}
+
+		public int getMaxSize() { return maxSize; }
+		public int getActive() { return active; }
+		public int getIdle() { return idle; }
+		public long getCreated() { return created; }
+		public long getBorrowed() { return borrowed; }
+		public long getReturned() { return returned; }
+		public long getEvicted() { return evicted; }
+		public long getValidationFailures() { return validationFailures; }
+		public long getBorrowTimeouts() { return borrowTimeouts; }
+		public long getConnectRetries() { return connectRetries; }
+		public long getStatementHits() { return statementHits; }
+		public long getStatementMisses() { return statementMisses; }
+		public long getStatementEvictions() { return statementEvictions; }
+
+		// Fraction of prepareStatement calls served from the statement cache
+		public double getStatementHitRate() {
+			long total = statementHits + statementMisses;
+			return total == 0 ? 0.0 : (double) statementHits / total;
+		}
+
+		@Override
+		public String toString() {
+			return "active=" + active + "/" + maxSize + ", idle=" + idle + ", created=" + created
+					+ ", borrowed=" + borrowed + ", returned=" + returned + ", evicted=" + evicted
+					+ ", validationFailures=" + validationFailures + ", borrowTimeouts=" + borrowTimeouts
+					+ ", connectRetries=" + connectRetries
+					+ ", statementHits=" + statementHits + ", statementMisses=" + statementMisses
+					+ ", statementEvictions=" + statementEvictions;
+		}
+	}
+}
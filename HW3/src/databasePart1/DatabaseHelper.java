@@ -1,11 +1,12 @@
 package databasePart1;
 import java.sql.*;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.UUID;
-import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import application.Role;
 import application.User;
 
 
@@ -15,50 +16,232 @@ import application.User;
  */
 public class DatabaseHelper {
 
-	// JDBC driver name and database URL 
+	// JDBC driver name and database name; AppConfig turns the name into a URL
 	static final String JDBC_DRIVER = "org.h2.Driver";   
-	static final String DB_URL = "jdbc:h2:~/FoundationDatabase";  
+	static final String DB_NAME = "FoundationDatabase";  
 
-	//  Database credentials 
-	static final String USER = "sa"; 
-	static final String PASS = ""; 
+	// initializeTestDatabase only wipes databases whose URL starts with this
+	static final String TEST_URL_PREFIX = "jdbc:h2:mem:";
 
-	private Connection connection = null;
-	private Statement statement = null; 
-	//	PreparedStatement pstmt
+	// Times an invitation code batch is retried after a code collision
+	static final int CODE_INSERT_ATTEMPTS = 3;
+
+	// Pool, cache, hashing and throttling settings
+	private final AppConfig config;
+
+	// Every DAO method borrows its own connection, so the helper is safe to share between threads
+	private volatile ConnectionPool pool = null;
+
+	// Asynchronous view of this helper for callers on the UI thread
+	private final AsyncDatabase<DatabaseHelper> async = new AsyncDatabase<>(this);
+
+	// Failed attempt limits shared by password and one time password logins
+	private final LoginThrottle loginThrottle;
+
+	// Credential checks for the login page
+	private final AuthenticationService authentication;
+
+	// Random invitation codes, pre-generated in the background
+	private final InvitationCodeGenerator codeGenerator;
+
+	// Salted password hashing, created and calibrated on first connect
+	private volatile PasswordHasher passwordHasher = null;
+
+	// Outstanding one time passwords, kept off the users table
+	private final OneTimePasswordStore oneTimePasswords;
+
+	// Purges old invitation codes and one time passwords in the background
+	private volatile MaintenanceService maintenance = null;
+
+	private final String url;
+
+	// Open the database embedded, as the host, or as a client, as set in AppConfig.get()
+	public DatabaseHelper() {
+		this(AppConfig.get());
+	}
+
+	// Open the database and use the settings of the given configuration
+	public DatabaseHelper(AppConfig config) {
+		this(config, config.databaseUrl(AppConfig.FOUNDATION_URL, DB_NAME));
+	}
+
+	// Use a different database, e.g. an in-memory one for tests
+	public DatabaseHelper(String url) {
+		this(AppConfig.get(), url);
+	}
+
+	private DatabaseHelper(AppConfig config, String url) {
+		this.config = config;
+		this.url = url;
+		// Other processes cannot see this process's memory, so a shared database keeps attempts and one time
+		// passwords in its tables
+		boolean shared = config.isShared(url);
+		this.loginThrottle = shared
+				? new SharedLoginThrottle(this, config.get(AppConfig.THROTTLE_MAX_FAILURES), config.get(AppConfig.THROTTLE_WINDOW))
+				: new LoginThrottle(config.get(AppConfig.THROTTLE_MAX_FAILURES), config.get(AppConfig.THROTTLE_WINDOW));
+		this.authentication = new AuthenticationService(this);
+		this.codeGenerator = new InvitationCodeGenerator(config.get(AppConfig.CODE_POOL_SIZE));
+		this.oneTimePasswords = new OneTimePasswordStore(this, shared || config.get(AppConfig.OTP_PERSISTENT),
+				config.get(AppConfig.OTP_TTL), config.get(AppConfig.OTP_TICK), config.get(AppConfig.OTP_WHEEL_SLOTS));
+	}
 
 	public void connectToDatabase() throws SQLException {
 		try {
 			Class.forName(JDBC_DRIVER); // Load the JDBC driver
 			System.out.println("Connecting to database...");
-			connection = DriverManager.getConnection(DB_URL, USER, PASS);
-			statement = connection.createStatement(); 
+			if (pool == null) {
+				pool = ConnectionPool.create(url, config);
+				startMaintenance();
+			}
 			// You can use this command to clear the database and restart from fresh.
-//			statement.execute("DROP ALL OBJECTS");
+//			execute("DROP ALL OBJECTS");
 
-			createTables();  // Create the necessary tables if they don't exist
+			migrateSchema();  // Create or upgrade the tables to the latest schema version
+			oneTimePasswords.load();
+			if (passwordHasher == null) {
+				int iterations = config.get(AppConfig.HASH_ITERATIONS);
+				if (iterations == 0) {
+					iterations = PasswordHasher.calibrate(config.get(AppConfig.HASH_TARGET));
+				}
+				passwordHasher = new PasswordHasher(iterations, config.get(AppConfig.HASH_THREADS),
+						config.get(AppConfig.HASH_QUEUE_CAPACITY));
+				System.out.println("Password hashing with " + passwordHasher.getIterations() + " iterations");
+			}
 		} catch (ClassNotFoundException e) {
 			System.err.println("JDBC Driver not found: " + e.getMessage());
 		}
 	}
 	
+	// Connect and start from an empty schema. Only in-memory databases may be wiped this way,
+	// so a test run can never drop the real tables
 	public void initializeTestDatabase() throws SQLException {
+	    if (!url.startsWith(TEST_URL_PREFIX)) {
+	        throw new SQLException("Refusing to wipe " + url + "; test databases must use " + TEST_URL_PREFIX);
+	    }
 	    connectToDatabase();
-	    statement.execute("DROP ALL OBJECTS");
-	    createTables();  // Re-create the necessary tables
+	    execute("DROP ALL OBJECTS");
+	    migrateSchema();  // Re-create the necessary tables
 	}
 
-	private void createTables() throws SQLException {
-		String userTable = "CREATE TABLE IF NOT EXISTS cse360users ("
+	// Schedule the clean-up of old rows, and file compaction for an embedded database file
+	private void startMaintenance() {
+		if (!config.get(AppConfig.MAINTENANCE_ENABLED)) {
+			return;
+		}
+		boolean compact = config.get(AppConfig.MAINTENANCE_COMPACT) && config.get(AppConfig.DB_MODE) == DatabaseServer.Mode.EMBEDDED
+				&& MaintenanceService.isLocalFile(url);
+		maintenance = new MaintenanceService(DB_NAME, pool, List.of(
+				new MaintenanceService.Task("used invitation codes", limit -> purgeInvitationCodes(true, limit)),
+				new MaintenanceService.Task("expired invitation codes", limit -> purgeInvitationCodes(false, limit)),
+				new MaintenanceService.Task("expired one time passwords", this::purgeExpiredOneTimePasswords),
+				new MaintenanceService.Task("old login attempts", this::purgeLoginAttempts)),
+				config.get(AppConfig.MAINTENANCE_CHUNK_SIZE), compact, config.get(AppConfig.MAINTENANCE_COMPACT_GROWTH),
+				() -> true);
+		maintenance.start(config.get(AppConfig.MAINTENANCE_INTERVAL));
+	}
+
+	// The background maintenance for this database, or null if it is turned off or not connected
+	public MaintenanceService maintenance() {
+		return maintenance;
+	}
+
+	// Delete up to limit used or unused invitation codes more than two hours old. Unused codes stop
+	// working after an hour; used ones are kept an hour longer so their roles can still be read after
+	// redemption. Each call is one short transaction on idx_invitations_age
+	int purgeInvitationCodes(boolean used, int limit) throws SQLException {
+		String delete = "DELETE FROM InvitationCodes WHERE isUsed = ? "
+				+ "AND generationTime < DATEADD('HOUR', -2, CURRENT_TIMESTAMP) FETCH FIRST ? ROWS ONLY";
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setBoolean(1, used);
+			pstmt.setInt(2, limit);
+			return pstmt.executeUpdate();
+		}
+	}
+
+	// Delete up to limit persisted one time passwords that have expired. The store drops its own
+	// entries as they expire, so these are rows left behind while the application was not running
+	int purgeExpiredOneTimePasswords(int limit) throws SQLException {
+		String delete = "DELETE FROM OneTimePasswords WHERE expiresAt < CURRENT_TIMESTAMP FETCH FIRST ? ROWS ONLY";
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setInt(1, limit);
+			return pstmt.executeUpdate();
+		}
+	}
+
+	// Delete up to limit login attempt counts whose window ended at least a window ago
+	int purgeLoginAttempts(int limit) throws SQLException {
+		String delete = "DELETE FROM LoginAttempts WHERE windowStart < ? FETCH FIRST ? ROWS ONLY";
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setLong(1, System.currentTimeMillis() - 2 * config.get(AppConfig.THROTTLE_WINDOW));
+			pstmt.setInt(2, limit);
+			return pstmt.executeUpdate();
+		}
+	}
+
+	// Run a single DDL or maintenance statement on a pooled connection
+	private void execute(String sql) throws SQLException {
+		try (PooledConnection connection = pool.borrow()) {
+			connection.createStatement().execute(sql);
+		}
+	}
+
+	// Run calls against this helper on a worker thread instead of the caller's thread
+	public AsyncDatabase<DatabaseHelper> async() {
+		return async;
+	}
+
+	// One time passwords for password resets
+	public OneTimePasswordStore oneTimePasswords() {
+		return oneTimePasswords;
+	}
+
+	// Login service backed by this helper's connection pool
+	public AuthenticationService authentication() {
+		return authentication;
+	}
+
+	// Failed attempt limits for logins
+	public LoginThrottle loginThrottle() {
+		return loginThrottle;
+	}
+
+	// Password hasher for services in this package
+	PasswordHasher passwordHasher() {
+		return passwordHasher;
+	}
+
+	// Borrow a pooled connection for services in this package that share the helper's pool
+	PooledConnection borrowConnection() throws SQLException {
+		return pool.borrow();
+	}
+
+	// Statistics for the connection pool backing this helper
+	public ConnectionPool.Stats getPoolStats() {
+		return pool.getStats();
+	}
+
+	// Apply any schema migrations this database has not seen yet
+	private void migrateSchema() throws SQLException {
+		new SchemaMigrator(pool).migrate(migrations());
+	}
+
+	// Ordered schema history for the user database. Never edit a migration once it has shipped;
+	// add a new version instead
+	static List<Migration> migrations() {
+		List<Migration> migrations = new ArrayList<>();
+		
+		// Version 1 is the original schema, so existing databases adopt it without changes
+		migrations.add(new Migration(1, "Create users and invitation codes tables",
+				"CREATE TABLE IF NOT EXISTS cse360users ("
 				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
 				+ "userName VARCHAR(255) UNIQUE, "
 				+ "password VARCHAR(255), "
 				+ "role VARCHAR(255),"
-				+ "oneTimePass VARCHAR(255))";
-		statement.execute(userTable);
-		
-		// Create the invitation codes table
-	    String invitationCodesTable = "CREATE TABLE IF NOT EXISTS InvitationCodes ("
+				+ "oneTimePass VARCHAR(255))",
+				"CREATE TABLE IF NOT EXISTS InvitationCodes ("
 	            + "code VARCHAR(10) PRIMARY KEY, "
 	            + "isUsed BOOLEAN DEFAULT FALSE, "
 	            + "admin BOOLEAN DEFAULT FALSE, "
@@ -66,56 +249,115 @@ public class DatabaseHelper {
 	            + "instructor BOOLEAN DEFAULT FALSE, "
 	            + "staff BOOLEAN DEFAULT FALSE, "
 	            + "reviewer BOOLEAN DEFAULT FALSE, "
-	            + "generationTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
-	    statement.execute(invitationCodesTable);
+	            + "generationTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"));
+		
+		// Version 2 replaces the comma separated role string with a Role bitmask and an indexed admin flag
+		migrations.add(new Migration(2, "Store roles as a bitmask",
+				"ALTER TABLE cse360users ADD COLUMN roles INT DEFAULT 0 NOT NULL",
+				"UPDATE cse360users SET roles = "
+				+ "CASE WHEN role LIKE '%admin%' THEN 1 ELSE 0 END + "
+				+ "CASE WHEN role LIKE '%student%' THEN 2 ELSE 0 END + "
+				+ "CASE WHEN role LIKE '%instructor%' THEN 4 ELSE 0 END + "
+				+ "CASE WHEN role LIKE '%staff%' THEN 8 ELSE 0 END + "
+				+ "CASE WHEN role LIKE '%reviewer%' THEN 16 ELSE 0 END "
+				+ "WHERE role IS NOT NULL",
+				"ALTER TABLE cse360users DROP COLUMN role",
+				"ALTER TABLE cse360users ADD COLUMN isAdmin BOOLEAN GENERATED ALWAYS AS (BITAND(roles, 1) <> 0)",
+				"CREATE INDEX idx_users_admin ON cse360users(isAdmin)"));
+		
+		// Redemption filters on isUsed and generationTime, and expired codes are found by age
+		migrations.add(new Migration(3, "Index invitation codes by state and age",
+				"CREATE INDEX idx_invitations_age ON InvitationCodes(isUsed, generationTime)"));
+		
+		// One time passwords move to their own table, holding only a digest and an expiry time
+		migrations.add(new Migration(4, "Move one time passwords out of the users table",
+				"CREATE TABLE OneTimePasswords ("
+				+ "userName VARCHAR(255) PRIMARY KEY, "
+				+ "digest VARBINARY(32) NOT NULL, "
+				+ "expiresAt TIMESTAMP NOT NULL)",
+				"CREATE INDEX idx_otp_expires ON OneTimePasswords(expiresAt)",
+				"ALTER TABLE cse360users DROP COLUMN oneTimePass"));
+		
+		// Login attempts are counted in a table when several processes share the database
+		migrations.add(new Migration(5, "Count login attempts in a shared table",
+				"CREATE TABLE LoginAttempts ("
+				+ "userName VARCHAR(255) PRIMARY KEY, "
+				+ "windowStart BIGINT NOT NULL, "
+				+ "attempts INT NOT NULL)",
+				"CREATE INDEX idx_login_attempts_start ON LoginAttempts(windowStart)"));
+		
+		return migrations;
 	}
 
 
 	// Check if the database is empty
 	public boolean isDatabaseEmpty() throws SQLException {
 		String query = "SELECT COUNT(*) AS count FROM cse360users";
-		ResultSet resultSet = statement.executeQuery(query);
-		if (resultSet.next()) {
-			return resultSet.getInt("count") == 0;
+		try (PooledConnection connection = pool.borrow();
+				ResultSet resultSet = connection.createStatement().executeQuery(query)) {
+			if (resultSet.next()) {
+				return resultSet.getInt("count") == 0;
+			}
 		}
 		return true;
 	}
 
-	// Registers a new user in the database.
+	// Registers a new user in the database. Only a salted hash of the password is stored
 	public void register(User user) throws SQLException {
-		String insertUser = "INSERT INTO cse360users (userName, password, role) VALUES (?, ?, ?)";
-		try (PreparedStatement pstmt = connection.prepareStatement(insertUser)) {
+		String insertUser = "INSERT INTO cse360users (userName, password, roles) VALUES (?, ?, ?)";
+		String hash = passwordHasher.hash(user.getPassword());
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(insertUser);
 			pstmt.setString(1, user.getUserName());
-			pstmt.setString(2, user.getPassword());
-			pstmt.setString(3, user.getRole());
+			pstmt.setString(2, hash);
+			pstmt.setInt(3, Role.toMask(user.getRoles()));
 			pstmt.executeUpdate();
 		}
 	}
 
-	// Validates a user's login credentials.
-	public boolean login(User user) throws SQLException {
-		String query = "SELECT * FROM cse360users WHERE userName = ? AND password = ? AND role = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-			pstmt.setString(1, user.getUserName());
-			pstmt.setString(2, user.getPassword());
-			pstmt.setString(3, user.getRole());
-			try (ResultSet rs = pstmt.executeQuery()) {
-				return rs.next();
+	// Registers several users with one batched insert in a single transaction, e.g. to seed fixtures
+	public void registerAll(Collection<User> users) throws SQLException {
+		String insertUser = "INSERT INTO cse360users (userName, password, roles) VALUES (?, ?, ?)";
+		List<String> hashes = new ArrayList<>();
+		for (User user : users) {
+			hashes.add(passwordHasher.hash(user.getPassword()));
+		}
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement pstmt = connection.prepareStatement(insertUser);
+				int i = 0;
+				for (User user : users) {
+					pstmt.setString(1, user.getUserName());
+					pstmt.setString(2, hashes.get(i++));
+					pstmt.setInt(3, Role.toMask(user.getRoles()));
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
 			}
 		}
 	}
+
+	// Validates a user's login credentials and checks the user holds exactly the given roles.
+	public boolean login(User user) throws SQLException {
+		User principal = authentication.authenticate(user.getUserName(), user.getPassword());
+		return principal != null && principal.getRoles().equals(user.getRoles());
+	}
 	
 	// Checks if a user already exists in the database based on their userName.
 	public boolean doesUserExist(String userName) {
 	    String query = "SELECT COUNT(*) FROM cse360users WHERE userName = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(query);
 	        
 	        pstmt.setString(1, userName);
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        if (rs.next()) {
+	        try (ResultSet rs = pstmt.executeQuery()) {
 	            // If the count is greater than 0, the user exists
-	            return rs.getInt(1) > 0;
+	            return rs.next() && rs.getInt(1) > 0;
 	        }
 	    } catch (SQLException e) {
 	        e.printStackTrace();
@@ -123,15 +365,22 @@ public class DatabaseHelper {
 	    return false; // If an error occurs, assume user doesn't exist
 	}
 	
-	// Retrieves the role of a user from the database using their UserName.
+	// Retrieves the roles of a user as a comma separated list using their UserName.
 	public String getUserRole(String userName) {
-	    String query = "SELECT role FROM cse360users WHERE userName = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		EnumSet<Role> roles = getUserRoles(userName);
+		return roles == null ? null : Role.format(roles);
+	}
+	
+	// Retrieves the roles of a user from the database using their UserName.
+	public EnumSet<Role> getUserRoles(String userName) {
+	    String query = "SELECT roles FROM cse360users WHERE userName = ?";
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(query);
 	        pstmt.setString(1, userName);
 	        ResultSet rs = pstmt.executeQuery();
 	        
 	        if (rs.next()) {
-	            return rs.getString("role"); // Return the role if user exists
+	            return Role.fromMask(rs.getInt("roles")); // Return the roles if user exists
 	        }
 	    } catch (SQLException e) {
 	        e.printStackTrace();
@@ -139,105 +388,201 @@ public class DatabaseHelper {
 	    return null; // If no user exists or an error occurs
 	}
 	
+	// Count the users holding the admin role, using the index on the generated isAdmin column
+	public int countAdmins() throws SQLException {
+		try (PooledConnection connection = pool.borrow()) {
+			return countAdmins(connection);
+		}
+	}
+	
+	private int countAdmins(PooledConnection connection) throws SQLException {
+		String query = "SELECT COUNT(*) AS count FROM cse360users WHERE isAdmin = TRUE";
+		PreparedStatement pstmt = connection.prepareStatement(query);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getInt("count") : 0;
+		}
+	}
+	
 	// Generates a new invitation code for any number of roles and inserts it into the database.
+	// Returns null if the code could not be stored
 	public String generateInvitationCode(boolean admin, boolean student, boolean instructor, boolean staff, boolean reviewer) {
-	    String code = UUID.randomUUID().toString().substring(0, 4); // Generate a random 4-character code
-	    String query = "INSERT INTO InvitationCodes (code, admin, student, instructor, staff, reviewer, generationTime) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, code);
-	        pstmt.setBoolean(2, admin);
-	        pstmt.setBoolean(3, student);
-	        pstmt.setBoolean(4, instructor);
-	        pstmt.setBoolean(5, staff);
-	        pstmt.setBoolean(6, reviewer);
-	        pstmt.setTimestamp(7, new Timestamp(System.currentTimeMillis()));
-	        pstmt.executeUpdate();
-	    } catch (SQLException e) {
-	        e.printStackTrace();
+		EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+		if (admin) roles.add(Role.ADMIN);
+		if (student) roles.add(Role.STUDENT);
+		if (instructor) roles.add(Role.INSTRUCTOR);
+		if (staff) roles.add(Role.STAFF);
+		if (reviewer) roles.add(Role.REVIEWER);
+		
+		try {
+			return generateInvitationCodes(1, roles).get(0);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	// Generates n invitation codes granting the same roles and inserts them in one JDBC batch.
+	// If a code happens to collide with an existing one, the whole batch is retried with fresh codes
+	public List<String> generateInvitationCodes(int n, Set<Role> roles) throws SQLException {
+	    String query = "INSERT INTO InvitationCodes (code, admin, student, instructor, staff, reviewer) VALUES (?, ?, ?, ?, ?, ?)";
+	    
+	    for (int attempt = 1; ; attempt++) {
+	    	List<String> codes = new ArrayList<>(n);
+	    	try (PooledConnection connection = pool.borrow()) {
+	    		connection.setAutoCommit(false);
+	    		try {
+	    			PreparedStatement pstmt = connection.prepareStatement(query);
+	    			for (int i = 0; i < n; i++) {
+	    				String code = codeGenerator.next();
+	    				codes.add(code);
+	    				pstmt.setString(1, code);
+	    				pstmt.setBoolean(2, roles.contains(Role.ADMIN));
+	    				pstmt.setBoolean(3, roles.contains(Role.STUDENT));
+	    				pstmt.setBoolean(4, roles.contains(Role.INSTRUCTOR));
+	    				pstmt.setBoolean(5, roles.contains(Role.STAFF));
+	    				pstmt.setBoolean(6, roles.contains(Role.REVIEWER));
+	    				pstmt.addBatch();
+	    			}
+	    			pstmt.executeBatch();
+	    			connection.commit();
+	    			return codes;
+	    		} catch (SQLException e) {
+	    			connection.rollback();
+	    			if (!isDuplicateKey(e) || attempt >= CODE_INSERT_ATTEMPTS) {
+	    				throw e;
+	    			}
+	    		}
+	    	}
 	    }
-	    return code;
 	}
 	
-	// Validates an invitation code to check if it is unused.
+	// True if an insert failed because of a unique or primary key violation
+	static boolean isDuplicateKey(SQLException e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof SQLException && "23505".equals(((SQLException) t).getSQLState())) {
+				return true;
+			}
+		}
+		for (SQLException next = e.getNextException(); next != null; next = next.getNextException()) {
+			if ("23505".equals(next.getSQLState())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	// Validates an invitation code and uses it up. Returns true if it was unused and less than an hour old
 	public boolean validateInvitationCode(String code) {
-	    String query = "SELECT * FROM InvitationCodes WHERE code = ? AND isUsed = FALSE"; 
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		return redeemInvitationCode(code) != null;
+	}
+	
+	// Redeem an invitation code and return the roles it grants, or null if the code does not exist,
+	// was already used, or is more than an hour old.
+	// The check and the update are one conditional UPDATE, so two people redeeming the same code at once
+	// cannot both succeed, and expired codes are left untouched
+	public EnumSet<Role> redeemInvitationCode(String code) {
+		String query = "SELECT admin, student, instructor, staff, reviewer FROM FINAL TABLE ("
+				+ "UPDATE InvitationCodes SET isUsed = TRUE "
+				+ "WHERE code = ? AND isUsed = FALSE AND generationTime > DATEADD('HOUR', -1, CURRENT_TIMESTAMP))";
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(query);
 	        pstmt.setString(1, code);
-	        ResultSet rs = pstmt.executeQuery();
-	        if (rs.next()) {
-	        	Timestamp generationTime = rs.getTimestamp("generationTime");
-                long currentTimeMillis = System.currentTimeMillis();
-                long generationTimeMillis = generationTime.getTime();
-
-	            // Mark the code as used
-	            markInvitationCodeAsUsed(code);
-	            
-	            // Check if code was created less than an hour ago
-	            if ((currentTimeMillis - generationTimeMillis) <= 3600000) {
-	            	return true;
-	            }
+	        try (ResultSet rs = pstmt.executeQuery()) {
+	        	if (rs.next()) {
+	        		return rolesFromCodeRow(rs);
+	        	}
 	        }
 	    } catch (SQLException e) {
 	        e.printStackTrace();
 	    }
-	    return false;
+	    return null;
 	}
 	
-	// Marks the invitation code as used in the database.
-	private void markInvitationCodeAsUsed(String code) {
-	    String query = "UPDATE InvitationCodes SET isUsed = TRUE WHERE code = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        pstmt.setString(1, code);
-	        pstmt.executeUpdate();
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
+	// Redeem an invitation code and register the user with the roles it grants, in one transaction.
+	// Returns the roles, or null if the code cannot be redeemed. If the insert fails the code is left unused
+	public EnumSet<Role> registerWithInvitationCode(User user, String code) throws SQLException {
+		String redeem = "SELECT admin, student, instructor, staff, reviewer FROM FINAL TABLE ("
+				+ "UPDATE InvitationCodes SET isUsed = TRUE "
+				+ "WHERE code = ? AND isUsed = FALSE AND generationTime > DATEADD('HOUR', -1, CURRENT_TIMESTAMP))";
+		String insertUser = "INSERT INTO cse360users (userName, password, roles) VALUES (?, ?, ?)";
+		// Hash before the transaction so the code's row is not locked while the hash is computed
+		String hash = passwordHasher.hash(user.getPassword());
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement pstmt = connection.prepareStatement(redeem);
+				pstmt.setString(1, code);
+				EnumSet<Role> roles;
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (!rs.next()) {
+						connection.rollback();
+						return null;
+					}
+					roles = rolesFromCodeRow(rs);
+				}
+				
+				PreparedStatement pstmt2 = connection.prepareStatement(insertUser);
+				pstmt2.setString(1, user.getUserName());
+				pstmt2.setString(2, hash);
+				pstmt2.setInt(3, Role.toMask(roles));
+				pstmt2.executeUpdate();
+				connection.commit();
+				user.setRoles(roles);
+				return roles;
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
 	}
 	
-	// Retrieves the role from an invitation code.
+	// Retrieves the roles from an invitation code as a comma separated list.
 	public String getRoleFromCode(String code) {
+		EnumSet<Role> roles = getRolesFromCode(code);
+		return roles == null ? null : Role.format(roles);
+	}
+	
+	// Retrieves the roles from an invitation code.
+	public EnumSet<Role> getRolesFromCode(String code) {
 		String query = "SELECT admin, student, instructor, staff, reviewer FROM InvitationCodes WHERE code = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(query);
 	        pstmt.setString(1, code);
 	        ResultSet rs = pstmt.executeQuery();
 	        
-	        // Checks boolean for each role
 	        if (rs.next()) {
-	        	boolean admin = rs.getBoolean("admin");
-                boolean student = rs.getBoolean("student");
-                boolean instructor = rs.getBoolean("instructor");
-                boolean staff = rs.getBoolean("staff");
-                boolean reviewer = rs.getBoolean("reviewer");
-                
-                // Add each role to a string to return
-                String role = "";
-                if (admin) role += "admin, ";
-                if (student) role += "student, ";
-                if (instructor) role += "instructor, ";
-                if (staff) role += "staff, ";
-                if (reviewer) role += "reviewer, ";
-                
-                // Return the role if user exists
-                System.out.println(role.substring(0, role.length()-2));
-                return role.substring(0, role.length()-2);
+	        	return rolesFromCodeRow(rs);
 	        } else {
 	        	System.out.println("Error: No role for code");
 	        }
 	    } catch (SQLException e) {
 	        e.printStackTrace();
 	    }
-	    return null; // If no user exists or an error occurs
+	    return null; // If no code exists or an error occurs
+	}
+	
+	// Checks the boolean for each role on an InvitationCodes row
+	private static EnumSet<Role> rolesFromCodeRow(ResultSet rs) throws SQLException {
+		EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+		if (rs.getBoolean("admin")) roles.add(Role.ADMIN);
+		if (rs.getBoolean("student")) roles.add(Role.STUDENT);
+		if (rs.getBoolean("instructor")) roles.add(Role.INSTRUCTOR);
+		if (rs.getBoolean("staff")) roles.add(Role.STAFF);
+		if (rs.getBoolean("reviewer")) roles.add(Role.REVIEWER);
+		return roles;
 	}
 	
 	public void assignRolesFromCodeToUser(String userName, String code) throws SQLException {
 	    // Get the roles from the code
-		String rolesFromCode = getRoleFromCode(code);
+		EnumSet<Role> rolesFromCode = getRolesFromCode(code);
+		if (rolesFromCode == null) {
+			return;
+		}
 
-		//enter roles into table as comma separated string
-		String updateRoleQuery = "UPDATE cse360users SET role = ? WHERE userName = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(updateRoleQuery)) {
-	        pstmt.setString(1, rolesFromCode);
+		String updateRoleQuery = "UPDATE cse360users SET roles = ? WHERE userName = ?";
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(updateRoleQuery);
+	        pstmt.setInt(1, Role.toMask(rolesFromCode));
 	        pstmt.setString(2, userName);
 	        pstmt.executeUpdate();
 	    }catch (SQLException e) {
@@ -245,77 +590,15 @@ public class DatabaseHelper {
 	    }
 	}
 
-	public String[] roleToArray(String role) {
-		String[] roleArray = role.split(", ");
-
-		return roleArray;
-	}
-
-	
-	// Generate a random 10-character password and assign it to a userName
-	public String createOneTimePass(String userName) {
-		String pass = UUID.randomUUID().toString().substring(0, 10);
-		String query = "UPDATE cse360users SET oneTimePass = ? WHERE userName = ?";
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
-			
-			pstmt.setString(1, pass);
-			pstmt.setString(2, userName);
-			pstmt.executeUpdate();
-			
-			// Return the password
-			return pass;
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-		return null;
-	}
-	
-	// Check if userName and oneTimePassword are a valid pair
-	public boolean checkOneTimePass(String userName, String password) throws SQLException {
-		String query = "SELECT oneTimePass FROM cse360users WHERE userName = ?"; 
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	    	
-	        pstmt.setString(1, userName);
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        if (rs.next()) {
-	        	if (rs.getString("oneTimePass") == null) {
-	        		return false;
-	        	}
-	        	if (rs.getString("oneTimePass").equals(password)) {
-	        		System.out.println(rs.getString("oneTimePass"));
-	        		
-	        		// If the password is valid, remove it
-	        		removeOneTimePass(userName);
-	        		return true;
-	        	}
-	        }
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
-		return false;
-	}
-	
-	// Remove the temporary password
-	public void removeOneTimePass(String userName) {
-		String query = "UPDATE cse360users SET oneTimePass = ? WHERE userName = ?";
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
-			
-			pstmt.setString(1, null);
-			pstmt.setString(2, userName);
-			pstmt.executeUpdate();
-			
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	}
 	
 	// Update the password associated with the userName
 	public void updateUserPassword(String userName, String password) throws SQLException {
 		String query = "UPDATE cse360users SET password = ? WHERE userName = ?";
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
+		String hash = passwordHasher.hash(password);
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(query);
 			
-			pstmt.setString(1, password);
+			pstmt.setString(1, hash);
 			pstmt.setString(2, userName);
 			pstmt.executeUpdate();
 			
@@ -329,24 +612,28 @@ public class DatabaseHelper {
 		// Check if the user exists 
 		if (doesUserExist(userName)) {
 			
-			String query = "SELECT role FROM cse360users WHERE username = ?";
-			try(PreparedStatement pstmt = connection.prepareStatement(query)) {
+			String query = "SELECT isAdmin FROM cse360users WHERE username = ?";
+			try (PooledConnection connection = pool.borrow()) {
+				PreparedStatement pstmt = connection.prepareStatement(query);
 				pstmt.setString(1, userName);
 				ResultSet rs = pstmt.executeQuery();
 				
 				// If user has admin role, do not delete
 		        if (rs.next()) {
-		        		if (rs.getString("role") != "admin") {
-		        			deleteUser(userName);
-		        			return userName;
-		        		} else {
+		        		if (rs.getBoolean("isAdmin")) {
 		        			return "Cannot delete admin";
 		        		}
+		        } else {
+		        	return "User does not exist";
 		        }
-		        pstmt.executeUpdate();
 			} catch (SQLException e) {
 				e.printStackTrace();
+				return "User does not exist";
 			}
+			
+			// Delete after the lookup connection is back in the pool
+			deleteUser(userName);
+			return userName;
 		}
 		return "User does not exist";
 	}
@@ -354,7 +641,8 @@ public class DatabaseHelper {
 	// Delete the user (userName) from the database
 	public void deleteUser(String userName) throws SQLException {
 		String query = "DELETE FROM cse360users WHERE username = ?";
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(query);
 			pstmt.setString(1, userName);
 			System.out.println("Deleted " + userName);
 			pstmt.executeUpdate();
@@ -365,16 +653,18 @@ public class DatabaseHelper {
 	
 	// List all users and info
 	public String listUsers() throws SQLException {
-		String query = "SELECT username, role FROM cse360users"; // ADD NAME AND EMAIL WHEN NECESSARY
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
+		String query = "SELECT username, roles FROM cse360users"; // ADD NAME AND EMAIL WHEN NECESSARY
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(query);
 			
-			String result = "";
-			ResultSet rs = pstmt.executeQuery();
-			
-			while (rs.next()) {
-				result = result + "UserName: " + rs.getString("username") + ", Role(s): " + rs.getString("role") + "\n";
+			StringBuilder result = new StringBuilder();
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					result.append("UserName: ").append(rs.getString("username"))
+							.append(", Role(s): ").append(Role.format(Role.fromMask(rs.getInt("roles")))).append('\n');
+				}
 			}
-			return result;
+			return result.toString();
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -382,74 +672,80 @@ public class DatabaseHelper {
 		return "";
 	}
 	
-	// Change user roles
-	public void changeRoles(String userName, String roles) throws SQLException {
-		
-		// If user is last admin, do not accept new roles
-		String query1 = "SELECT role FROM cse360users WHERE userName = ?";
-		int counter = 2;
+	// Change user roles from a comma separated role list. Returns userName if the roles were changed,
+	// otherwise the reason they were not
+	public String changeRoles(String userName, String roles) throws SQLException {
+		return changeRoles(userName, Role.parse(roles));
+	}
+	
+	// Change user roles. The last remaining admin cannot give up the admin role.
+	// Returns userName if the roles were changed, otherwise the reason they were not.
+	// Only a change that removes the admin role locks the admin rows, always in id order and before the
+	// user's own row, so two admins removing their own roles at the same time are serialized and the
+	// second one counts the first one's change
+	public String changeRoles(String userName, Set<Role> roles) throws SQLException {
+		String lockAdmins = "SELECT id FROM cse360users WHERE isAdmin = TRUE ORDER BY id FOR UPDATE";
+		String select = "SELECT roles FROM cse360users WHERE userName = ? FOR UPDATE";
+		String update = "UPDATE cse360users SET roles = ? WHERE userName = ?";
 		
-		try(PreparedStatement pstmt = connection.prepareStatement(query1)) {
-			
-			pstmt.setString(1, userName);
-			
-			String oldRoles = "";
-			ResultSet rs = pstmt.executeQuery();
-			while (rs.next()) {
-				oldRoles = rs.getString("role");
-			}
-			
-			if (oldRoles.contains("admin") && !(oldRoles.isEmpty())) {
-				counter = 0;
-				String query2 = "SELECT role FROM cse360users";
-				try(PreparedStatement pstmt2 = connection.prepareStatement(query2)) {
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				boolean adminsLocked = false;
+				while (true) {
+					PreparedStatement pstmt = connection.prepareStatement(select);
+					pstmt.setString(1, userName);
+					int oldRoles;
+					try (ResultSet rs = pstmt.executeQuery()) {
+						if (!rs.next()) {
+							connection.rollback();
+							return "User does not exist";
+						}
+						oldRoles = rs.getInt("roles");
+					}
 					
-					ResultSet rs2 = pstmt2.executeQuery();
-					while (rs2.next()) {
-						if (rs2.getString("role").contains("admin")) {
-							counter++;
-							System.out.println("yup" + rs2.getString("role"));
-						} else {
-							System.out.println("nope" + rs2.getString("role"));
+					boolean removesAdmin = (oldRoles & Role.ADMIN.getBit()) != 0 && !roles.contains(Role.ADMIN);
+					if (removesAdmin && !adminsLocked) {
+						// Let go of the user's row and start again holding the admin rows first
+						connection.rollback();
+						try (ResultSet rs = connection.prepareStatement(lockAdmins).executeQuery()) {
+							while (rs.next()) {
+								// Reading each row takes its lock
+							}
 						}
+						adminsLocked = true;
+						continue;
+					}
+					if (removesAdmin && countAdmins(connection) < 2) {
+						connection.rollback();
+						return "Cannot remove the last admin";
 					}
 					
-				} catch (SQLException e) {
-					e.printStackTrace();
+					PreparedStatement pstmt2 = connection.prepareStatement(update);
+					pstmt2.setInt(1, Role.toMask(roles));
+					pstmt2.setString(2, userName);
+					pstmt2.executeUpdate();
+					connection.commit();
+					return userName;
 				}
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
 			}
-			
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-		
-		if (counter < 2) {
-			return;
-		}
-		String query = "UPDATE cse360users SET role = ? WHERE userName = ?";
-		try(PreparedStatement pstmt = connection.prepareStatement(query)) {
-			
-			pstmt.setString(1, roles);
-			pstmt.setString(2, userName);
-			pstmt.executeUpdate();
-			
-		} catch (SQLException e) {
-			e.printStackTrace();
 		}
 	}
 
-	// Closes the database connection and statement.
+	// Closes every pooled database connection.
 	public void closeConnection() {
-		try{ 
-			if(statement!=null) statement.close(); 
-		} catch(SQLException se2) { 
-			se2.printStackTrace();
-		} 
-		try { 
-			if(connection!=null) connection.close(); 
-		} catch(SQLException se){ 
-			se.printStackTrace(); 
-		} 
+		if (maintenance != null) {
+			maintenance.close();
+			maintenance = null;
+		}
+		oneTimePasswords.close();
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
 	}
 
 }
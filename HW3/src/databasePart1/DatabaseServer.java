@@ -0,0 +1,88 @@
+package databasePart1;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.tools.Server;
+
+/**
+ * The DatabaseServer class decides where the application's databases live.
+ * In EMBEDDED mode, the default, each database is a file that only this process can open.
+ * In HOST mode this process opens the files itself and also serves them over TCP, so other
+ * instances of the application can share them. In CLIENT mode this process connects to a host over TCP.
+ * There is no replicated cluster mode. H2 clustering does not support identity columns and every table
+ * here has one, so instances that need the same data share one HOST instead.
+ * The mode is picked through AppConfig, e.g. -Dcse360.db.mode=host -Dcse360.db.port=9092.
+ */
+public class DatabaseServer {
+
+	public enum Mode { EMBEDDED, HOST, CLIENT }
+
+	private final Mode mode;
+	private final String host;
+	private final int port;
+	private final boolean allowOthers;
+	private Server server = null;
+
+	private static DatabaseServer shared = null;
+
+	// allowOthers lets other machines connect; otherwise the server only listens to this machine
+	public DatabaseServer(Mode mode, String host, int port, boolean allowOthers) {
+		this.mode = mode;
+		this.host = host;
+		this.port = port;
+		this.allowOthers = allowOthers;
+	}
+
+	// The configuration of this process, as set in AppConfig
+	public static synchronized DatabaseServer shared() {
+		if (shared == null) {
+			shared = AppConfig.get().server();
+		}
+		return shared;
+	}
+
+	public Mode getMode() { return mode; }
+	public String getHost() { return host; }
+	public int getPort() { return port; }
+
+	// JDBC URL for a database in the home directory, e.g. url("FoundationDatabase").
+	// The host opens its files directly and shares them with the TCP server in the same JVM;
+	// clients reconnect by themselves if the host restarts
+	public String url(String name) {
+		if (mode == Mode.CLIENT) {
+			return "jdbc:h2:tcp://" + host + ":" + port + "/~/" + name + ";AUTO_RECONNECT=TRUE";
+		}
+		return "jdbc:h2:~/" + name;
+	}
+
+	// Start serving over TCP if this process is the host; does nothing in the other modes.
+	// Clients can only open databases that already exist, so the host connects to its databases
+	// through the embedded URL before calling this, which creates them
+	public synchronized void start() throws SQLException {
+		if (mode != Mode.HOST || server != null) {
+			return;
+		}
+		List<String> args = new ArrayList<>();
+		args.add("-tcpPort");
+		args.add(String.valueOf(port));
+		if (allowOthers) {
+			args.add("-tcpAllowOthers");
+		}
+		server = Server.createTcpServer(args.toArray(new String[0])).start();
+		System.out.println("Serving databases at " + server.getURL());
+	}
+
+	public synchronized boolean isRunning() {
+		return server != null && server.isRunning(false);
+	}
+
+	// Stop serving; connected clients lose their connections
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+}
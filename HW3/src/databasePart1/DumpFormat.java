@@ -0,0 +1,249 @@
+package databasePart1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DumpFormat enum describes the two file formats shared by the bulk importer and the exporter,
+ * and reads them back; the StreamingExporter writes them.
+ * Every record is a flat set of fields with a "type" of question, answer, comment or user.
+ * JSONL has one object per line. CSV has a header row and then one row per record over a
+ * fixed column set; answer and comment content goes in the text column, as does a question body.
+ */
+public enum DumpFormat {
+	JSONL,
+	CSV;
+
+	// Column order for CSV dumps; JSONL records use the same field names
+	static final String[] COLUMNS = {"type", "id", "qID", "userName", "title", "text", "resolved", "deleted", "resolves", "roles"};
+
+	// Pick the format from a file extension, defaulting to JSONL
+	public static DumpFormat forFile(Path file) {
+		String name = file.getFileName().toString().toLowerCase();
+		return name.endsWith(".csv") ? CSV : JSONL;
+	}
+
+	// Open a reader that returns one record at a time as field name to text value; null values are left out
+	RecordReader reader(BufferedReader in) throws IOException {
+		return this == CSV ? new CsvReader(in) : new JsonlReader(in);
+	}
+
+	/**
+	 * Reads the records of a dump one at a time.
+	 */
+	interface RecordReader {
+		// Return the next record, or null at the end of the input
+		Map<String, String> next() throws IOException;
+	}
+
+	private static final class JsonlReader implements RecordReader {
+		private final BufferedReader in;
+		private int lineNumber = 0;
+
+		JsonlReader(BufferedReader in) {
+			this.in = in;
+		}
+
+		@Override
+		public Map<String, String> next() throws IOException {
+			String line;
+			do {
+				line = in.readLine();
+				lineNumber++;
+				if (line == null) {
+					return null;
+				}
+				line = line.trim();
+			} while (line.isEmpty());
+			return parse(line);
+		}
+
+		// Parse one flat JSON object; nested objects and arrays are not part of the format
+		private Map<String, String> parse(String line) throws IOException {
+			Map<String, String> record = new LinkedHashMap<>();
+			int[] pos = {0};
+			skipSpace(line, pos);
+			expect(line, pos, '{');
+			skipSpace(line, pos);
+			if (peek(line, pos) == '}') {
+				return record;
+			}
+			while (true) {
+				skipSpace(line, pos);
+				String key = readString(line, pos);
+				skipSpace(line, pos);
+				expect(line, pos, ':');
+				skipSpace(line, pos);
+				String value;
+				if (peek(line, pos) == '"') {
+					value = readString(line, pos);
+				} else {
+					int start = pos[0];
+					while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) {
+						pos[0]++;
+					}
+					value = line.substring(start, pos[0]);
+					if (value.equals("null")) {
+						value = null;
+					}
+				}
+				if (value != null) {
+					record.put(key, value);
+				}
+				skipSpace(line, pos);
+				char c = peek(line, pos);
+				pos[0]++;
+				if (c == '}') {
+					return record;
+				}
+				if (c != ',') {
+					throw error("expected ',' or '}'");
+				}
+			}
+		}
+
+		private String readString(String line, int[] pos) throws IOException {
+			expect(line, pos, '"');
+			StringBuilder sb = new StringBuilder();
+			while (pos[0] < line.length()) {
+				char c = line.charAt(pos[0]++);
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				if (pos[0] >= line.length()) {
+					break;
+				}
+				char e = line.charAt(pos[0]++);
+				switch (e) {
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'u':
+					if (pos[0] + 4 > line.length()) {
+						throw error("bad unicode escape");
+					}
+					sb.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+					pos[0] += 4;
+					break;
+				default: sb.append(e);
+				}
+			}
+			throw error("unterminated string");
+		}
+
+		private void expect(String line, int[] pos, char c) throws IOException {
+			if (peek(line, pos) != c) {
+				throw error("expected '" + c + "'");
+			}
+			pos[0]++;
+		}
+
+		private static char peek(String line, int[] pos) {
+			return pos[0] < line.length() ? line.charAt(pos[0]) : '\0';
+		}
+
+		private static void skipSpace(String line, int[] pos) {
+			while (pos[0] < line.length() && Character.isWhitespace(line.charAt(pos[0]))) {
+				pos[0]++;
+			}
+		}
+
+		private IOException error(String message) {
+			return new IOException("Line " + lineNumber + ": " + message);
+		}
+	}
+
+	private static final class CsvReader implements RecordReader {
+		private final BufferedReader in;
+		private final String[] header;
+
+		CsvReader(BufferedReader in) throws IOException {
+			this.in = in;
+			String[] fields = readRow();
+			this.header = fields == null ? COLUMNS : fields;
+		}
+
+		@Override
+		public Map<String, String> next() throws IOException {
+			String[] fields;
+			do {
+				fields = readRow();
+				if (fields == null) {
+					return null;
+				}
+			} while (fields.length == 1 && fields[0] == null);
+
+			Map<String, String> record = new LinkedHashMap<>();
+			for (int i = 0; i < fields.length && i < header.length; i++) {
+				if (fields[i] != null) {
+					record.put(header[i], fields[i]);
+				}
+			}
+			return record;
+		}
+
+		// Read one row. An unquoted empty field is null, while a quoted one is an empty string.
+		// A row ends at \n, \r\n or \r outside quotes; inside quotes every character is kept as it is
+		private String[] readRow() throws IOException {
+			int c = in.read();
+			if (c < 0) {
+				return null;
+			}
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			boolean wasQuoted = false;
+			while (true) {
+				if (quoted) {
+					if (c < 0) {
+						throw new IOException("Unterminated quoted field");
+					}
+					if (c == '"') {
+						int next = in.read();
+						if (next == '"') {
+							field.append('"');
+						} else {
+							// The closing quote; look at the character after it again outside quotes
+							quoted = false;
+							c = next;
+							continue;
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c < 0 || c == '\n' || c == '\r') {
+					if (c == '\r') {
+						in.mark(1);
+						if (in.read() != '\n') {
+							in.reset();
+						}
+					}
+					fields.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+					break;
+				} else if (c == '"') {
+					quoted = true;
+					wasQuoted = true;
+				} else if (c == ',') {
+					fields.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+					field.setLength(0);
+					wasQuoted = false;
+				} else {
+					field.append((char) c);
+				}
+				c = in.read();
+			}
+			return fields.toArray(new String[0]);
+		}
+	}
+}
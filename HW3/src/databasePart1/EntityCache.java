@@ -0,0 +1,154 @@
+package databasePart1;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The EntityCache class is a bounded, size-aware LRU cache for rows read from the database.
+ * Each entry is weighed when it is stored and the least recently used entries are evicted
+ * once the total weight goes over the limit.
+ * Writers call invalidate after their change is committed. A load that started before an
+ * invalidation is not stored, so a slow reader can never put back a row that was just changed.
+ */
+public class EntityCache<K, V> {
+
+	private final long maxWeight;
+	private final ToLongFunction<V> weigher;
+
+	// Entries in access order, least recently used first
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+
+	// Bumped on every invalidation; loads record it before they query and are dropped if it moved
+	private long epoch = 0;
+
+	// Cache statistics
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long invalidations = 0;
+
+	// Create a cache holding at most maxWeight worth of entries as measured by the weigher
+	public EntityCache(long maxWeight, ToLongFunction<V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	// Return the cached value for a key, or null on a miss
+	public synchronized V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	// Call before reading from the database; pass the result to put along with the value
+	public synchronized long beginLoad() {
+		return epoch;
+	}
+
+	// Store a loaded value unless something was invalidated since the load began
+	public synchronized void put(K key, V value, long loadEpoch) {
+		if (loadEpoch != epoch) {
+			return;
+		}
+		long size = weigher.applyAsLong(value);
+		if (size > maxWeight) {
+			return;
+		}
+		Entry<V> old = entries.put(key, new Entry<>(value, size));
+		if (old != null) {
+			weight -= old.weight;
+		}
+		weight += size;
+
+		Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			Map.Entry<K, Entry<V>> eldest = it.next();
+			weight -= eldest.getValue().weight;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	// Drop the entry for a key after its rows have changed
+	public synchronized void invalidate(K key) {
+		epoch++;
+		invalidations++;
+		Entry<V> old = entries.remove(key);
+		if (old != null) {
+			weight -= old.weight;
+		}
+	}
+
+	// Drop every entry
+	public synchronized void clear() {
+		epoch++;
+		invalidations++;
+		entries.clear();
+		weight = 0;
+	}
+
+	// Return a snapshot of the cache statistics
+	public synchronized Stats getStats() {
+		return new Stats(entries.size(), weight, maxWeight, hits, misses, evictions, invalidations);
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long weight;
+
+		Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Point-in-time statistics for an EntityCache.
+	 */
+	public static final class Stats {
+		private final int entries;
+		private final long weight;
+		private final long maxWeight;
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long invalidations;
+
+		Stats(int entries, long weight, long maxWeight, long hits, long misses, long evictions, long invalidations) {
+			this.entries = entries;
+			this.weight = weight;
+			this.maxWeight = maxWeight;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.invalidations = invalidations;
+		}
+
+		public int getEntries() { return entries; }
+		public long getWeight() { return weight; }
+		public long getMaxWeight() { return maxWeight; }
+		public long getHits() { return hits; }
+		public long getMisses() { return misses; }
+		public long getEvictions() { return evictions; }
+		public long getInvalidations() { return invalidations; }
+
+		// Fraction of lookups served from the cache
+		public double getHitRate() {
+			long total = hits + misses;
+			return total == 0 ? 0.0 : (double) hits / total;
+		}
+
+		@Override
+		public String toString() {
+			return "entries=" + entries + ", weight=" + weight + "/" + maxWeight + ", hits=" + hits
+					+ ", misses=" + misses + ", evictions=" + evictions + ", invalidations=" + invalidations;
+		}
+	}
+}
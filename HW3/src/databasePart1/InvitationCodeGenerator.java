@@ -0,0 +1,86 @@
+package databasePart1;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The InvitationCodeGenerator class makes random invitation codes from a SecureRandom.
+ * Codes are 10 characters from a 32 character alphabet (50 bits), so collisions are vanishingly rare.
+ * A pool of ready codes is kept in a lock-free queue and topped up on a background thread, so handing
+ * out a batch of codes never waits on the random number generator.
+ */
+public class InvitationCodeGenerator {
+
+	// Crockford base 32: no I, L, O or U, so codes read aloud or copied by hand are hard to get wrong
+	static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+	// Matches the width of InvitationCodes.code
+	static final int CODE_LENGTH = 10;
+
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final AtomicBoolean refilling = new AtomicBoolean(false);
+	private final int poolSize;
+	private final int lowWater;
+
+	private static final ExecutorService REFILLER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "invitation-code-refill");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Keep up to poolSize codes ready and refill once fewer than a quarter are left
+	public InvitationCodeGenerator(int poolSize) {
+		this.poolSize = poolSize;
+		this.lowWater = Math.max(1, poolSize / 4);
+		requestRefill();
+	}
+
+	// Take a code from the pool, or make one now if the pool is empty
+	public String next() {
+		String code = pool.poll();
+		if (code != null) {
+			pooled.decrementAndGet();
+		} else {
+			code = newCode();
+		}
+		if (pooled.get() < lowWater) {
+			requestRefill();
+		}
+		return code;
+	}
+
+	// Number of codes ready in the pool
+	public int available() {
+		return pooled.get();
+	}
+
+	// Start one background refill unless one is already running
+	private void requestRefill() {
+		if (refilling.compareAndSet(false, true)) {
+			REFILLER.execute(() -> {
+				try {
+					while (pooled.get() < poolSize) {
+						pool.offer(newCode());
+						pooled.incrementAndGet();
+					}
+				} finally {
+					refilling.set(false);
+				}
+			});
+		}
+	}
+
+	private String newCode() {
+		char[] code = new char[CODE_LENGTH];
+		for (int i = 0; i < CODE_LENGTH; i++) {
+			code[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		}
+		return new String(code);
+	}
+}
@@ -0,0 +1,162 @@
+package databasePart1;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LoginThrottle class limits failed password and one time password attempts per user name.
+ * Failures are counted in a sliding window per user name: the count for the current window plus the
+ * previous window's count weighted by how much of it still overlaps. Once a name reaches the limit,
+ * further attempts are rejected before any SQL runs.
+ * Every attempt is counted as a failure up front when it is checked, with a compare-and-set on the
+ * counter, and a successful login clears the name. So a burst of parallel guesses gets no more than
+ * the limit, however many of them pass the check before the first one fails. Counters are atomics and
+ * the statistics are LongAdders, so concurrent logins never wait on a lock.
+ * Names with no recent attempts are swept away in the background.
+ * The counts live in this process only; SharedLoginThrottle also counts in the database when other
+ * processes share it.
+ */
+public class LoginThrottle implements AutoCloseable {
+
+	private final int maxFailures;
+	private final long windowMillis;
+	private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+	// Statistics
+	private final LongAdder checks = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	private ScheduledFuture<?> sweeping;
+
+	// One daemon thread sweeps idle names for every throttle
+	private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "login-throttle-sweep");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Failure counts for one user name over the current and previous window
+	private static final class Window {
+		final AtomicLong start;
+		final AtomicInteger current = new AtomicInteger();
+		volatile int previous = 0;
+		volatile long lastAttempt;
+		// Set once the name is known to have attempts in the shared table too
+		volatile boolean shared = false;
+
+		Window(long now) {
+			start = new AtomicLong(now);
+			lastAttempt = now;
+		}
+	}
+
+	// Allow at most maxFailures failed attempts per user name in any window of windowMillis
+	public LoginThrottle(int maxFailures, long windowMillis) {
+		this.maxFailures = maxFailures;
+		this.windowMillis = windowMillis;
+		sweeping = SWEEPER.scheduleWithFixedDelay(this::sweep, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// Reserve an attempt for this user name before any SQL runs, or throw if it has failed too often
+	// recently. The attempt counts as a failure until recordSuccess clears the name; an attempt that
+	// ends in an error also stays counted
+	public void check(String userName) throws SQLException {
+		checks.increment();
+		if (userName == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		Window window = windows.computeIfAbsent(userName, k -> new Window(now));
+		roll(window, now);
+		double carried = window.previous * Math.max(0.0, 1.0 - (double) (now - window.start.get()) / windowMillis);
+		while (true) {
+			int current = window.current.get();
+			if (current + carried >= maxFailures) {
+				throw rejected(userName, windowMillis - (now - window.start.get()));
+			}
+			if (window.current.compareAndSet(current, current + 1)) {
+				window.lastAttempt = now;
+				return;
+			}
+		}
+	}
+
+	// Note that a checked attempt failed. check already counted it, so this only updates the statistics
+	public void recordFailure(String userName) {
+		if (userName != null) {
+			failures.increment();
+		}
+	}
+
+	// Forget a user name's failures after a successful login
+	public void recordSuccess(String userName) {
+		if (userName != null) {
+			forget(userName);
+		}
+	}
+
+	// Note that the shared table has attempts for a user name, so a success has something to clear there
+	void markShared(String userName) {
+		Window window = windows.get(userName);
+		if (window != null) {
+			window.shared = true;
+		}
+	}
+
+	// Forget a user name here. Returns true if it was marked as having attempts in the shared table
+	boolean forget(String userName) {
+		Window window = windows.remove(userName);
+		return window != null && window.shared;
+	}
+
+	int getMaxFailures() { return maxFailures; }
+	long getWindowMillis() { return windowMillis; }
+
+	// Count a refused attempt and build the exception for it
+	ThrottledException rejected(String userName, long retryAfterMillis) {
+		rejections.increment();
+		return new ThrottledException(userName, retryAfterMillis);
+	}
+
+	public long getChecks() { return checks.sum(); }
+	public long getRejections() { return rejections.sum(); }
+	public long getFailures() { return failures.sum(); }
+	public int getTrackedNames() { return windows.size(); }
+
+	@Override
+	public synchronized void close() {
+		if (sweeping != null) {
+			sweeping.cancel(false);
+			sweeping = null;
+		}
+	}
+
+	// Move to a new window once the current one has ended; only the thread that wins the CAS rolls it
+	private void roll(Window window, long now) {
+		long start = window.start.get();
+		long age = now - start;
+		if (age < windowMillis) {
+			return;
+		}
+		long newStart = now - (age % windowMillis);
+		if (window.start.compareAndSet(start, newStart)) {
+			int ended = window.current.getAndSet(0);
+			// If more than one whole window passed, the previous window saw no failures
+			window.previous = age < 2 * windowMillis ? ended : 0;
+		}
+	}
+
+	// Drop names whose last attempt is older than two windows, so they can no longer affect a check
+	private void sweep() {
+		long cutoff = System.currentTimeMillis() - 2 * windowMillis;
+		windows.entrySet().removeIf(e -> e.getValue().lastAttempt < cutoff);
+	}
+}
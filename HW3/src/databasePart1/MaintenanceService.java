@@ -0,0 +1,234 @@
+package databasePart1;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The MaintenanceService class keeps one database small in the background.
+ * On every run it works through its purge tasks. Each task removes rows in chunks, and each chunk is
+ * its own short transaction on a freshly borrowed connection, so other callers are never locked out
+ * for long. Every task's query runs on an index over the rows it removes, so a run costs time in
+ * proportion to the garbage, not the table.
+ * When the database has been idle since the previous run and its file has grown enough since it was
+ * last compacted, the file is compacted with SHUTDOWN COMPACT while the pool keeps every other
+ * borrower out; the pool reopens the database on the next borrow. Each run returns and logs a Report
+ * of what it reclaimed.
+ */
+public class MaintenanceService implements AutoCloseable {
+
+	/**
+	 * Removes up to limit rows in one transaction and returns how many it removed.
+	 */
+	@FunctionalInterface
+	public interface ChunkPurge {
+		int purge(int limit) throws SQLException;
+	}
+
+	/**
+	 * A named purge task.
+	 */
+	public static final class Task {
+		private final String name;
+		private final ChunkPurge purge;
+
+		public Task(String name, ChunkPurge purge) {
+			this.name = name;
+			this.purge = purge;
+		}
+	}
+
+	private final String name;
+	private final ConnectionPool pool;
+	private final List<Task> tasks;
+	private final int chunkSize;
+	private final boolean compact;
+	private final int compactGrowthPercent;
+	private final BooleanSupplier quiet;
+
+	// Borrow count at the end of the previous run; unchanged at the next run means nobody used the database
+	private long borrowedAfterLastRun = -1;
+	// File size after the last compaction, or -1 before the first one
+	private long sizeAfterCompaction = -1;
+	private volatile Report lastReport = null;
+	private ScheduledFuture<?> running = null;
+
+	// One daemon thread runs maintenance for every database
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "db-maintenance");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// compact allows SHUTDOWN COMPACT, so only pass true for an embedded file database that no other
+	// process shares. quiet must return true only when nothing is waiting to be written
+	public MaintenanceService(String name, ConnectionPool pool, List<Task> tasks, int chunkSize, boolean compact,
+			int compactGrowthPercent, BooleanSupplier quiet) {
+		this.name = name;
+		this.pool = pool;
+		this.tasks = List.copyOf(tasks);
+		this.chunkSize = chunkSize;
+		this.compact = compact;
+		this.compactGrowthPercent = compactGrowthPercent;
+		this.quiet = quiet;
+	}
+
+	// Run every intervalMillis until closed
+	public synchronized void start(long intervalMillis) {
+		if (running == null) {
+			running = SCHEDULER.scheduleWithFixedDelay(this::runQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// Purge every task to the end, then compact if the database is idle. Safe to call directly
+	public synchronized Report runOnce() throws SQLException {
+		long start = System.nanoTime();
+		boolean idle = pool.getStats().getBorrowed() == borrowedAfterLastRun && pool.getStats().getActive() == 0
+				&& quiet.getAsBoolean();
+
+		Map<String, Long> purged = new LinkedHashMap<>();
+		for (Task task : tasks) {
+			long total = 0;
+			int removed;
+			do {
+				removed = task.purge.purge(chunkSize);
+				total += removed;
+			} while (removed >= chunkSize);
+			purged.put(task.name, total);
+		}
+
+		long sizeBefore = -1;
+		long sizeAfter = -1;
+		if (compact && idle) {
+			Path file = databaseFile();
+			sizeBefore = Files.exists(file) ? size(file) : -1;
+			if (sizeBefore > 0 && (sizeAfterCompaction < 0
+					|| sizeBefore * 100 >= sizeAfterCompaction * (100L + compactGrowthPercent))) {
+				// Check again with every other borrower kept out, since the purges gave them time to arrive
+				boolean compacted = pool.runExclusive(connection -> {
+					if (!quiet.getAsBoolean()) {
+						return false;
+					}
+					connection.createStatement().execute("SHUTDOWN COMPACT");
+					return true;
+				});
+				if (compacted) {
+					sizeAfter = size(file);
+					sizeAfterCompaction = sizeAfter;
+				} else {
+					sizeBefore = -1;
+				}
+			} else {
+				sizeBefore = -1;
+			}
+		}
+
+		borrowedAfterLastRun = pool.getStats().getBorrowed();
+		Report report = new Report(name, purged, sizeBefore, sizeAfter, System.nanoTime() - start);
+		lastReport = report;
+		if (report.getRowsPurged() > 0 || report.isCompacted()) {
+			System.out.println("Maintenance: " + report);
+		}
+		return report;
+	}
+
+	public Report getLastReport() {
+		return lastReport;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (running != null) {
+			running.cancel(false);
+			running = null;
+		}
+	}
+
+	// True if a URL names an embedded database file rather than memory or a server
+	static boolean isLocalFile(String url) {
+		String rest = url.substring("jdbc:h2:".length());
+		return !rest.startsWith("mem:") && !rest.startsWith("tcp:") && !rest.startsWith("ssl:");
+	}
+
+	private void runQuietly() {
+		try {
+			runOnce();
+		} catch (SQLException | RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// The MVStore file behind the pool's database
+	private Path databaseFile() throws SQLException {
+		try (PooledConnection connection = pool.borrow();
+				ResultSet rs = connection.createStatement().executeQuery("SELECT DATABASE_PATH()")) {
+			rs.next();
+			return Paths.get(rs.getString(1) + ".mv.db");
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	/**
+	 * What one maintenance run reclaimed.
+	 */
+	public static final class Report {
+		private final String database;
+		private final Map<String, Long> purged;
+		private final long sizeBefore;
+		private final long sizeAfter;
+		private final long elapsedNanos;
+
+		Report(String database, Map<String, Long> purged, long sizeBefore, long sizeAfter, long elapsedNanos) {
+			this.database = database;
+			this.purged = purged;
+			this.sizeBefore = sizeBefore;
+			this.sizeAfter = sizeAfter;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		// Rows removed by each task, in task order
+		public Map<String, Long> getPurged() { return purged; }
+		public boolean isCompacted() { return sizeAfter >= 0; }
+		public long getSizeBefore() { return sizeBefore; }
+		public long getSizeAfter() { return sizeAfter; }
+		public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+		public long getRowsPurged() {
+			return purged.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		// Bytes the compaction gave back, or 0 if it did not run
+		public long getBytesReclaimed() {
+			return isCompacted() ? Math.max(0, sizeBefore - sizeAfter) : 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder(database).append(": purged ").append(purged);
+			if (isCompacted()) {
+				result.append(", compacted ").append(sizeBefore).append(" to ").append(sizeAfter)
+						.append(" bytes (").append(getBytesReclaimed()).append(" reclaimed)");
+			}
+			return result.append(" in ").append(getElapsedMillis()).append(" ms").toString();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package databasePart1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A Migration is one versioned step of a database schema.
+ * Once a migration has been applied its statements must never change; the checksum
+ * recorded in schema_version is compared on every connect to catch edited migrations.
+ */
+public class Migration {
+	private final int version;
+	private final String description;
+	private final List<String> statements;
+	private final long checksum;
+
+	// Constructor to initialize a migration with a version, a short description, and the SQL to run
+	public Migration(int version, String description, String... statements) {
+		if (version < 1) {
+			throw new IllegalArgumentException("Migration versions start at 1");
+		}
+		this.version = version;
+		this.description = description;
+		this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+
+		CRC32 crc = new CRC32();
+		for (String sql : statements) {
+			crc.update(sql.getBytes(StandardCharsets.UTF_8));
+			crc.update('\n');
+		}
+		this.checksum = crc.getValue();
+	}
+
+	// Functions to return the version, description, statements, or checksum
+	public int getVersion() {return version;}
+	public String getDescription() {return description;}
+	public List<String> getStatements() {return statements;}
+	public long getChecksum() {return checksum;}
+}
@@ -0,0 +1,282 @@
+package databasePart1;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OneTimePasswordStore class holds the one time passwords an admin hands out for password resets.
+ * Each password belongs to one user, expires after its time to live, and can be used once.
+ * Entries live in a concurrent map and are expired by a timing wheel that a background thread turns
+ * once per tick, so expiring an entry costs nothing until its slot comes round.
+ * Only a SHA-256 digest of each password is kept and digests are compared in constant time.
+ * When persistence is on, entries are also written to the OneTimePasswords table so a restart
+ * does not invalidate passwords that were already handed out, and the table row is what a password is
+ * checked against. Persistence is always on when other processes share the database.
+ */
+public class OneTimePasswordStore implements AutoCloseable {
+
+	// Same alphabet as invitation codes: no I, L, O or U
+	private static final String ALPHABET = InvitationCodeGenerator.ALPHABET;
+	private static final int PASSWORD_LENGTH = 10;
+
+	private final DatabaseHelper databaseHelper;
+	private final boolean persistent;
+	private final long defaultTtlMillis;
+	private final long tickMillis;
+
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// Timing wheel: each slot lists the entries that may expire when the wheel reaches it
+	private final ConcurrentLinkedQueue<Entry>[] wheel;
+	private volatile int cursor = 0;
+	private ScheduledFuture<?> ticking = null;
+
+	// One daemon thread turns the wheels of every store
+	private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "otp-expiry");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// One issued password: its digest, when it expires, and how many more turns of the wheel it survives.
+	// rounds is only touched by the expiry thread
+	private static final class Entry {
+		final String userName;
+		final byte[] digest;
+		final long expiresAt;
+		int rounds;
+
+		Entry(String userName, byte[] digest, long expiresAt, int rounds) {
+			this.userName = userName;
+			this.digest = digest;
+			this.expiresAt = expiresAt;
+			this.rounds = rounds;
+		}
+	}
+
+	// wheelSlots times tickMillis is one turn of the wheel; longer lifetimes wait extra turns
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public OneTimePasswordStore(DatabaseHelper databaseHelper, boolean persistent, long defaultTtlMillis,
+			long tickMillis, int wheelSlots) {
+		this.databaseHelper = databaseHelper;
+		this.persistent = persistent;
+		this.defaultTtlMillis = defaultTtlMillis;
+		this.tickMillis = tickMillis;
+		this.wheel = new ConcurrentLinkedQueue[wheelSlots];
+		for (int i = 0; i < wheelSlots; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	// Start expiring entries and read back passwords that were persisted before a restart.
+	// Called each time the database connects
+	public synchronized void load() throws SQLException {
+		if (ticking == null) {
+			ticking = TICKER.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		}
+		if (!persistent) {
+			return;
+		}
+		String query = "SELECT userName, digest, expiresAt FROM OneTimePasswords WHERE expiresAt > CURRENT_TIMESTAMP";
+		long now = System.currentTimeMillis();
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(query);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					long expiresAt = rs.getTimestamp("expiresAt").getTime();
+					schedule(rs.getString("userName"), rs.getBytes("digest"), expiresAt, expiresAt - now);
+				}
+			}
+		}
+	}
+
+	// Issue a new password for a user with the default lifetime, replacing any earlier one
+	public String issue(String userName) throws SQLException {
+		return issue(userName, defaultTtlMillis);
+	}
+
+	// Issue a new password for a user that expires after ttlMillis, replacing any earlier one
+	public String issue(String userName, long ttlMillis) throws SQLException {
+		String password = newPassword();
+		byte[] digest = digest(password);
+		long expiresAt = System.currentTimeMillis() + ttlMillis;
+
+		if (persistent) {
+			String merge = "MERGE INTO OneTimePasswords (userName, digest, expiresAt) KEY (userName) VALUES (?, ?, ?)";
+			try (PooledConnection connection = databaseHelper.borrowConnection()) {
+				PreparedStatement pstmt = connection.prepareStatement(merge);
+				pstmt.setString(1, userName);
+				pstmt.setBytes(2, digest);
+				pstmt.setTimestamp(3, new Timestamp(expiresAt));
+				pstmt.executeUpdate();
+			}
+		}
+		schedule(userName, digest, expiresAt, ttlMillis);
+		return password;
+	}
+
+	// Use up a user's password. Returns true only for the first correct, unexpired attempt.
+	// Throws ThrottledException if the user name has failed too often recently
+	public boolean consume(String userName, String password) throws SQLException {
+		LoginThrottle throttle = databaseHelper.loginThrottle();
+		throttle.check(userName);
+		boolean used = password != null
+				&& (persistent ? consumePersisted(userName, digest(password)) : consumeInMemory(userName, digest(password)));
+		if (used) {
+			throttle.recordSuccess(userName);
+		} else {
+			throttle.recordFailure(userName);
+		}
+		return used;
+	}
+
+	private boolean consumeInMemory(String userName, byte[] digest) {
+		Entry entry = entries.get(userName);
+		if (entry == null) {
+			return false;
+		}
+		if (entry.expiresAt <= System.currentTimeMillis()) {
+			expire(userName, entry);
+			return false;
+		}
+		// Only one caller can remove this exact entry, so a password cannot be used twice
+		return MessageDigest.isEqual(entry.digest, digest) && entries.remove(userName, entry);
+	}
+
+	// The table is shared by every process using the database, and a password may have been issued or
+	// used by another one, so the row decides: only one delete of it can succeed
+	private boolean consumePersisted(String userName, byte[] digest) throws SQLException {
+		String delete = "DELETE FROM OneTimePasswords WHERE userName = ? AND digest = ? AND expiresAt > ?";
+		int deleted;
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setString(1, userName);
+			pstmt.setBytes(2, digest);
+			pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+			deleted = pstmt.executeUpdate();
+		}
+		Entry entry = entries.get(userName);
+		if (entry != null && MessageDigest.isEqual(entry.digest, digest)) {
+			entries.remove(userName, entry);
+		}
+		return deleted == 1;
+	}
+
+	// Withdraw a user's password, if there is one
+	public void revoke(String userName) throws SQLException {
+		Entry entry = entries.remove(userName);
+		if (entry != null) {
+			deletePersisted(entry);
+		}
+	}
+
+	// Number of passwords currently outstanding
+	public int size() {
+		return entries.size();
+	}
+
+	// Stop expiring entries; persisted passwords stay in the table for the next start
+	@Override
+	public synchronized void close() {
+		if (ticking != null) {
+			ticking.cancel(false);
+			ticking = null;
+		}
+	}
+
+	private void schedule(String userName, byte[] digest, long expiresAt, long ttlMillis) {
+		long ticks = Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+		int rounds = (int) ((ticks - 1) / wheel.length);
+		int slot = (int) ((cursor + ticks) % wheel.length);
+		Entry entry = new Entry(userName, digest, expiresAt, rounds);
+		entries.put(userName, entry);
+		wheel[slot].add(entry);
+	}
+
+	// Advance the wheel one slot and expire the entries that are due there
+	private void tick() {
+		try {
+			int slot = (cursor + 1) % wheel.length;
+			cursor = slot;
+			ConcurrentLinkedQueue<Entry> due = wheel[slot];
+			long now = System.currentTimeMillis();
+			int count = due.size();
+			for (int i = 0; i < count; i++) {
+				Entry entry = due.poll();
+				if (entry == null) {
+					break;
+				}
+				if (entries.get(entry.userName) != entry) {
+					// Already used, revoked or replaced by a newer password
+					continue;
+				}
+				if (entry.rounds > 0) {
+					entry.rounds--;
+					due.add(entry);
+				} else if (entry.expiresAt <= now) {
+					expire(entry.userName, entry);
+				} else {
+					// The tick ran a little early; check again on the next one
+					wheel[(slot + 1) % wheel.length].add(entry);
+				}
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void expire(String userName, Entry entry) {
+		if (entries.remove(userName, entry)) {
+			try {
+				deletePersisted(entry);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Delete the row for this exact password. Matching the digest keeps a fresh password that issue()
+	// has just written for the same user from being deleted along with the old one
+	private void deletePersisted(Entry entry) throws SQLException {
+		if (!persistent) {
+			return;
+		}
+		String delete = "DELETE FROM OneTimePasswords WHERE userName = ? AND digest = ?";
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setString(1, entry.userName);
+			pstmt.setBytes(2, entry.digest);
+			pstmt.executeUpdate();
+		}
+	}
+
+	private String newPassword() {
+		char[] password = new char[PASSWORD_LENGTH];
+		for (int i = 0; i < PASSWORD_LENGTH; i++) {
+			password[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		}
+		return new String(password);
+	}
+
+	private static byte[] digest(String password) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// Every JDK ships SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
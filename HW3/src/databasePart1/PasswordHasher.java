@@ -0,0 +1,169 @@
+package databasePart1;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * The PasswordHasher class turns passwords into salted PBKDF2-HMAC-SHA256 hashes and checks them.
+ * Hashing is deliberately slow, so it runs on its own bounded pool of threads: a burst of logins
+ * queues up there instead of tying up the database workers, and a full queue fails fast.
+ * Stored hashes look like "pbkdf2$iterations$salt$hash" with Base64 salt and hash. Anything else in
+ * the password column is a legacy plaintext password from before hashing was added.
+ */
+public class PasswordHasher implements AutoCloseable {
+
+	static final String PREFIX = "pbkdf2$";
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int KEY_BITS = 256;
+
+	// Calibration never goes below or above these iteration counts
+	static final int MIN_ITERATIONS = 100_000;
+	static final int MAX_ITERATIONS = 5_000_000;
+	private static final int PROBE_ITERATIONS = 20_000;
+
+	private final int iterations;
+	// A well-formed hash at the current iteration count that no password is expected to match
+	private final String dummyHash;
+	private final SecureRandom random = new SecureRandom();
+	private final ThreadPoolExecutor executor;
+
+	// threads hash at once and up to queueCapacity more requests wait; beyond that hashing is refused
+	public PasswordHasher(int iterations, int threads, int queueCapacity) {
+		this.iterations = iterations;
+		Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+		this.dummyHash = PREFIX + iterations + "$" + b64.encodeToString(new byte[SALT_BYTES])
+				+ "$" + b64.encodeToString(new byte[KEY_BITS / 8]);
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), r -> {
+					Thread t = new Thread(r, "password-hasher-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	// Find the iteration count that makes one hash take about targetMillis on this machine
+	public static int calibrate(long targetMillis) {
+		byte[] salt = new byte[SALT_BYTES];
+		char[] password = "calibration".toCharArray();
+		try {
+			// Warm up so the measurement is not dominated by class loading and JIT
+			derive(password, salt, PROBE_ITERATIONS);
+			long start = System.nanoTime();
+			derive(password, salt, PROBE_ITERATIONS);
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			long iterations = PROBE_ITERATIONS * TimeUnit.MILLISECONDS.toNanos(targetMillis) / elapsed;
+			return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+		} catch (GeneralSecurityException e) {
+			e.printStackTrace();
+			return MIN_ITERATIONS;
+		}
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	// Hash a password with a fresh salt
+	public String hash(String password) throws SQLException {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		byte[] key = run(() -> derive(password.toCharArray(), salt, iterations));
+		Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+		return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(key);
+	}
+
+	// Check a password against a stored hash, or against a legacy plaintext password
+	public boolean verify(String password, String stored) throws SQLException {
+		if (password == null || stored == null) {
+			return false;
+		}
+		if (isLegacy(stored)) {
+			return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+		}
+		String[] parts = stored.split("\\$");
+		if (parts.length != 4) {
+			return false;
+		}
+		int storedIterations;
+		byte[] salt;
+		byte[] expected;
+		try {
+			storedIterations = Integer.parseInt(parts[1]);
+			salt = Base64.getDecoder().decode(parts[2]);
+			expected = Base64.getDecoder().decode(parts[3]);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		byte[] actual = run(() -> derive(password.toCharArray(), salt, storedIterations));
+		return MessageDigest.isEqual(expected, actual);
+	}
+
+	// Check a password against the dummy hash and return false, so a user name that does not exist
+	// takes as long to refuse as a wrong password
+	public boolean verifyDummy(String password) throws SQLException {
+		verify(password, dummyHash);
+		return false;
+	}
+
+	// True if a stored password is plaintext or was hashed with fewer iterations than we use now
+	public boolean needsRehash(String stored) {
+		if (isLegacy(stored)) {
+			return true;
+		}
+		String[] parts = stored.split("\\$");
+		try {
+			return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	// True if a stored password predates hashing
+	public static boolean isLegacy(String stored) {
+		return stored != null && !stored.startsWith(PREFIX);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	// Run a hash on the hashing pool and wait for it
+	private byte[] run(Callable<byte[]> work) throws SQLException {
+		try {
+			return executor.submit(work).get();
+		} catch (RejectedExecutionException e) {
+			throw new SQLException("Too many password checks in progress, try again", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while hashing a password", e);
+		} catch (ExecutionException e) {
+			throw new SQLException("Password hashing failed", e.getCause());
+		}
+	}
+
+	private static byte[] derive(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+		PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, KEY_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PooledConnection is a connection borrowed from a ConnectionPool.
+ * Closing it returns the underlying JDBC connection to the pool instead of closing it.
+ * Prepared statements are kept in a per-connection LRU cache keyed by SQL text, so callers
+ * must not close the statements they get from prepareStatement.
+ */
+public class PooledConnection implements AutoCloseable {
+
+	private final ConnectionPool pool;
+	private final Connection connection;
+
+	// Plain statements handed out during the current borrow
+	private final List<Statement> openStatements = new ArrayList<>();
+
+	// Prepared statements, least recently used first; the eldest is closed once the cache is full
+	private final Map<String, PreparedStatement> statementCache;
+
+	private long lastReturned = System.currentTimeMillis();
+	private boolean borrowed = false;
+
+	PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+		this.pool = pool;
+		this.connection = connection;
+		this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= statementCacheSize) {
+					return false;
+				}
+				closeQuietly(eldest.getValue());
+				pool.recordStatementEviction();
+				return true;
+			}
+		};
+	}
+
+	// Return the cached statement for this SQL text, preparing it on a miss
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		PreparedStatement pstmt = statementCache.get(sql);
+		if (pstmt != null && !pstmt.isClosed()) {
+			pool.recordStatementHit();
+			pstmt.clearParameters();
+			return pstmt;
+		}
+		pool.recordStatementMiss();
+		pstmt = connection.prepareStatement(sql);
+		statementCache.put(sql, pstmt);
+		return pstmt;
+	}
+
+	// Create a plain statement that stays open until this connection is returned to the pool
+	public Statement createStatement() throws SQLException {
+		Statement stmt = connection.createStatement();
+		openStatements.add(stmt);
+		return stmt;
+	}
+
+	// Transaction control for DAO methods that need more than one statement to be atomic
+	public void setAutoCommit(boolean autoCommit) throws SQLException { connection.setAutoCommit(autoCommit); }
+	public void commit() throws SQLException { connection.commit(); }
+	public void rollback() throws SQLException { connection.rollback(); }
+
+	// The underlying JDBC connection; callers must not close it
+	public Connection getConnection() { return connection; }
+
+	long getLastReturned() { return lastReturned; }
+
+	void markBorrowed() {
+		borrowed = true;
+	}
+
+	void markReturned() {
+		lastReturned = System.currentTimeMillis();
+	}
+
+	// Return the connection to the pool
+	@Override
+	public void close() {
+		if (!borrowed) {
+			return;
+		}
+		borrowed = false;
+		closeStatements();
+		pool.release(this);
+	}
+
+	void closeStatements() {
+		for (Statement stmt : openStatements) {
+			closeQuietly(stmt);
+		}
+		openStatements.clear();
+	}
+
+	private static void closeQuietly(Statement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Really close the JDBC connection; used by the pool on eviction and shutdown
+	void closePhysical() {
+		closeStatements();
+		for (PreparedStatement pstmt : statementCache.values()) {
+			closeQuietly(pstmt);
+		}
+		statementCache.clear();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -1,84 +1,280 @@
 package databasePart1;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import application.Question;
 import application.Answer;
 import application.Comment;
+import application.QuestionSummary;
+import application.QuestionThread;
 
 public class QuestionsAnswersDatabase {
 	
-	// JDBC driver name and database URL 
+	// JDBC driver name and database name; AppConfig turns the name into a URL
 	static final String JDBC_DRIVER = "org.h2.Driver";   
-	static final String DB_URL = "jdbc:h2:~/QuestionAnswerDatabase";  
+	static final String DB_NAME = "QuestionAnswerDatabase";  
 
-	//  Database credentials 
-	static final String USER = "sa"; 
-	static final String PASS = ""; 
+	// Pool, cache and write-behind settings
+	private final AppConfig config;
 
-	private Connection connection = null;
-	private Statement statement = null;
+	// Every DAO method borrows its own connection, so the database is safe to share between threads
+	private volatile ConnectionPool pool = null;
+
+	// Asynchronous view of this database for callers on the UI thread
+	private final AsyncDatabase<QuestionsAnswersDatabase> async = new AsyncDatabase<>(this);
+
+	// Question threads by question id, loaded without a viewer; every write to a question invalidates its entry.
+	// Other processes' writes cannot invalidate it, so it holds nothing when the database is shared
+	private final EntityCache<Integer, QuestionThread> threadCache;
+
+	// Queue for new answers and comments, or null to write each post in its own transaction
+	private volatile WriteBehindQueue writeBehind = null;
+	
+	// Moves old soft-deleted questions to the archive tables in the background
+	private volatile MaintenanceService maintenance = null;
+	
+	private final String url;
+	
+	// Open the database embedded, as the host, or as a client, as set in AppConfig.get()
+	public QuestionsAnswersDatabase() {
+		this(AppConfig.get());
+	}
+	
+	// Open the database and use the settings of the given configuration
+	public QuestionsAnswersDatabase(AppConfig config) {
+		this(config, config.databaseUrl(AppConfig.QUESTIONS_URL, DB_NAME));
+	}
+	
+	// Use a different database, e.g. an in-memory one for tests
+	public QuestionsAnswersDatabase(String url) {
+		this(AppConfig.get(), url);
+	}
+	
+	private QuestionsAnswersDatabase(AppConfig config, String url) {
+		this.config = config;
+		this.url = url;
+		long cacheBytes = config.isShared(url) ? 0 : config.get(AppConfig.THREAD_CACHE_BYTES);
+		this.threadCache = new EntityCache<>(cacheBytes, QuestionsAnswersDatabase::estimateSize);
+	}
 		
 	public void connectToQuestionAnswerDatabase() throws SQLException {
-		System.out.println("tester\n");
 		try {
 			Class.forName(JDBC_DRIVER); // Load the JDBC driver
 			System.out.println("Connecting to database...");
-			connection = DriverManager.getConnection(DB_URL, USER, PASS);
-			statement = connection.createStatement(); 
+			if (pool == null) {
+				pool = ConnectionPool.create(url, config);
+				startMaintenance();
+			}
 			// You can use this command to clear the database and restart from fresh.
-//			statement.execute("DROP ALL OBJECTS");
+//			execute("DROP ALL OBJECTS");
 
-			// Create the necessary tables if they don't exist
-			createQuestionTable();  
-			createAnswerTable();
-			createCommentTable();
+			// Create or upgrade the tables to the latest schema version
+			new SchemaMigrator(pool).migrate(migrations());
+			
+			if (config.get(AppConfig.WRITE_BEHIND_ENABLED) && writeBehind == null) {
+				enableWriteBehind(config.get(AppConfig.WRITE_BEHIND_CAPACITY), config.get(AppConfig.WRITE_BEHIND_MAX_BATCH),
+						config.get(AppConfig.WRITE_BEHIND_MAX_DELAY), config.get(AppConfig.WRITE_BEHIND_DURABILITY),
+						config.get(AppConfig.WRITE_BEHIND_BACKPRESSURE));
+			}
 		} catch (ClassNotFoundException e) {
 			System.err.println("JDBC Driver not found: " + e.getMessage());
 		}
 	}
 	
 	
-	// Create the questions table
-	private void createQuestionTable() throws SQLException {
-		String questionTable = "CREATE TABLE IF NOT EXISTS questions ("
+	// Connect and start from an empty schema. Only in-memory databases may be wiped this way,
+	// so a test run can never drop the real tables
+	public void initializeTestDatabase() throws SQLException {
+		if (!url.startsWith(DatabaseHelper.TEST_URL_PREFIX)) {
+			throw new SQLException("Refusing to wipe " + url + "; test databases must use " + DatabaseHelper.TEST_URL_PREFIX);
+		}
+		connectToQuestionAnswerDatabase();
+		execute("DROP ALL OBJECTS");
+		threadCache.clear();
+		new SchemaMigrator(pool).migrate(migrations());
+	}
+	
+	
+	// Run a single DDL or maintenance statement on a pooled connection
+	private void execute(String sql) throws SQLException {
+		try (PooledConnection connection = pool.borrow()) {
+			connection.createStatement().execute(sql);
+		}
+	}
+	
+	// Schedule archiving of deleted questions, and file compaction for an embedded database file
+	private void startMaintenance() {
+		if (!config.get(AppConfig.MAINTENANCE_ENABLED)) {
+			return;
+		}
+		boolean compact = config.get(AppConfig.MAINTENANCE_COMPACT) && config.get(AppConfig.DB_MODE) == DatabaseServer.Mode.EMBEDDED
+				&& MaintenanceService.isLocalFile(url);
+		long archiveAfter = config.get(AppConfig.MAINTENANCE_ARCHIVE_AFTER);
+		maintenance = new MaintenanceService(DB_NAME, pool, List.of(
+				new MaintenanceService.Task("archived questions", limit -> archiveDeletedQuestions(archiveAfter, limit))),
+				config.get(AppConfig.MAINTENANCE_CHUNK_SIZE), compact, config.get(AppConfig.MAINTENANCE_COMPACT_GROWTH),
+				() -> writeBehind == null || writeBehind.size() == 0);
+		maintenance.start(config.get(AppConfig.MAINTENANCE_INTERVAL));
+	}
+	
+	// The background maintenance for this database, or null if it is turned off or not connected
+	public MaintenanceService maintenance() {
+		return maintenance;
+	}
+	
+	// Run calls against this database on a worker thread instead of the caller's thread
+	public AsyncDatabase<QuestionsAnswersDatabase> async() {
+		return async;
+	}
+	
+	// Statistics for the connection pool backing this database
+	public ConnectionPool.Stats getPoolStats() {
+		return pool.getStats();
+	}
+	
+	// Statistics for the question thread cache
+	public EntityCache.Stats getThreadCacheStats() {
+		return threadCache.getStats();
+	}
+	
+	// Drop every cached thread after rows were changed outside the DAO methods
+	void clearThreadCache() {
+		threadCache.clear();
+	}
+	
+	// Borrow a pooled connection for bulk tools in this package that share the database's pool
+	PooledConnection borrowConnection() throws SQLException {
+		return pool.borrow();
+	}
+	
+	// Send new answers and comments through a write-behind queue with group commit
+	public synchronized void enableWriteBehind(int capacity, int maxBatch, long maxDelayMillis,
+			WriteBehindQueue.Durability durability, WriteBehindQueue.Backpressure backpressure) {
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+		writeBehind = new WriteBehindQueue(this, capacity, maxBatch, maxDelayMillis, durability, backpressure);
+	}
+	
+	// Commit any queued posts and go back to one transaction per post
+	public synchronized void disableWriteBehind() {
+		if (writeBehind != null) {
+			writeBehind.close();
+			writeBehind = null;
+		}
+	}
+	
+	// Flushes queued posts, then closes every pooled database connection
+	public void closeConnection() {
+		if (maintenance != null) {
+			maintenance.close();
+			maintenance = null;
+		}
+		disableWriteBehind();
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+		threadCache.clear();
+	}
+	
+	
+	// Orders the question feed can be read in
+	public enum FeedOrder {
+		NEWEST,
+		RECENT_ACTIVITY
+	}
+	
+	// Ordered schema history for the question and answer database. Never edit a migration once it
+	// has shipped; add a new version instead
+	static List<Migration> migrations() {
+		List<Migration> migrations = new ArrayList<>();
+		
+		// Version 1 is the original schema, so existing databases adopt it without changes
+		migrations.add(new Migration(1, "Create questions, answers and comments tables",
+				"CREATE TABLE IF NOT EXISTS questions ("
 				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
 				+ "userName VARCHAR(255), "
 				+ "title VARCHAR(255), "
 				+ "body TEXT, "
 				+ "deleted BOOLEAN DEFAULT FALSE, "
-				+ "resolved BOOLEAN DEFAULT FALSE)";
-		statement.execute(questionTable);
-	}
-	
-	// Create the answers table
-	private void createAnswerTable() throws SQLException {
-		String answerTable = "CREATE TABLE IF NOT EXISTS answers ("
+				+ "resolved BOOLEAN DEFAULT FALSE)",
+				"CREATE TABLE IF NOT EXISTS answers ("
 				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
 				+ "qID INT,"
 				+ "userName VARCHAR(255), "
 				+ "content TEXT, "
 				+ "resolves BOOLEAN DEFAULT FALSE ,"
-				+ "FOREIGN KEY (qID) REFERENCES questions(id) ON DELETE CASCADE)";
-		statement.execute(answerTable);
-	}
-	
-	private void createCommentTable() throws SQLException {
-		String commentTable = "CREATE TABLE IF NOT EXISTS comments ("
+				+ "FOREIGN KEY (qID) REFERENCES questions(id) ON DELETE CASCADE)",
+				"CREATE TABLE IF NOT EXISTS comments ("
 				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
 				+ "qID INT,"
 				+ "userName VARCHAR(255), "
 				+ "content TEXT, "
-				+ "FOREIGN KEY (qID) REFERENCES questions(id) ON DELETE CASCADE)";
-		statement.execute(commentTable);
+				+ "FOREIGN KEY (qID) REFERENCES questions(id) ON DELETE CASCADE)"));
+		
+		// Child rows are always read by question in posting order, and the feed filters by owner and state
+		migrations.add(new Migration(2, "Index answers, comments and feed filters",
+				"CREATE INDEX IF NOT EXISTS idx_answers_qid ON answers(qID, id)",
+				"CREATE INDEX IF NOT EXISTS idx_comments_qid ON comments(qID, id)",
+				"CREATE INDEX IF NOT EXISTS idx_questions_owner ON questions(userName, resolved, id)",
+				"CREATE INDEX IF NOT EXISTS idx_questions_state ON questions(deleted, resolved, id)"));
+		
+		// Denormalized child counts and activity times so the feed never touches answers or comments
+		migrations.add(new Migration(3, "Add answer/comment counters and activity timestamps to questions",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS answerCount INT DEFAULT 0 NOT NULL",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS commentCount INT DEFAULT 0 NOT NULL",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS lastActivityAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP",
+				"UPDATE questions q SET "
+				+ "answerCount = (SELECT COUNT(*) FROM answers a WHERE a.qID = q.id), "
+				+ "commentCount = (SELECT COUNT(*) FROM comments c WHERE c.qID = q.id)",
+				"CREATE INDEX IF NOT EXISTS idx_questions_activity ON questions(deleted, lastActivityAt, id)"));
+		
+		// Soft-deleted questions move out of the hot tables once they are old enough
+		migrations.add(new Migration(4, "Add deletion times and archive tables for deleted questions",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS deletedAt TIMESTAMP",
+				"CREATE INDEX IF NOT EXISTS idx_questions_deleted ON questions(deleted, deletedAt, id)",
+				"CREATE TABLE IF NOT EXISTS questions_archive ("
+				+ "id INT NOT NULL PRIMARY KEY, "
+				+ "userName VARCHAR(255), "
+				+ "title VARCHAR(255), "
+				+ "body TEXT, "
+				+ "deleted BOOLEAN, "
+				+ "resolved BOOLEAN, "
+				+ "answerCount INT, "
+				+ "commentCount INT, "
+				+ "createdAt TIMESTAMP, "
+				+ "lastActivityAt TIMESTAMP, "
+				+ "deletedAt TIMESTAMP)",
+				"CREATE TABLE IF NOT EXISTS answers_archive ("
+				+ "id INT NOT NULL PRIMARY KEY, "
+				+ "qID INT NOT NULL, "
+				+ "userName VARCHAR(255), "
+				+ "content TEXT, "
+				+ "resolves BOOLEAN)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_archive_qid ON answers_archive(qID, id)",
+				"CREATE TABLE IF NOT EXISTS comments_archive ("
+				+ "id INT NOT NULL PRIMARY KEY, "
+				+ "qID INT NOT NULL, "
+				+ "userName VARCHAR(255), "
+				+ "content TEXT)",
+				"CREATE INDEX IF NOT EXISTS idx_comments_archive_qid ON comments_archive(qID, id)"));
+		
+		return migrations;
 	}
 	
 	// Count the number of questions
 	public int numQuestions() throws SQLException {
 		String q = "SELECT COUNT(*) AS count FROM questions";
-		ResultSet rs = statement.executeQuery(q);
-		if (rs.next()) {
-			return rs.getInt("count");
+		try (PooledConnection connection = pool.borrow();
+				ResultSet rs = connection.createStatement().executeQuery(q)) {
+			if (rs.next()) {
+				return rs.getInt("count");
+			}
 		}
 		return 0;
 	}
@@ -88,7 +284,8 @@ public class QuestionsAnswersDatabase {
 	public void addQuestion(Question question) throws SQLException {
 		String q = "INSERT INTO questions (userName, title, body) VALUES (?, ?, ?)";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setString(1, question.getUserName());
 			pstmt.setString(2, question.getTitle());
 			pstmt.setString(3, question.getBody());
@@ -97,11 +294,204 @@ public class QuestionsAnswersDatabase {
 	}
 	
 	
+	// Return the visible question feed, newest first, in a single query.
+	// owner limits the feed to one user's questions (null for everyone), unresolvedOnly hides resolved
+	// questions, and filterText keeps questions whose title or body contains it (empty for no filter)
+	public List<QuestionSummary> getQuestionFeed(String owner, boolean unresolvedOnly, String filterText) throws SQLException {
+		return getQuestionFeedPage(null, 0, owner, unresolvedOnly, filterText);
+	}
+	
+	
+	// Return the next page of the question feed after a cursor, newest first.
+	// The cursor is the last row of the previous page (null for the first page), and the page is found by
+	// seeking the primary key below its id, so deep pages cost the same as the first one.
+	// A limit of 0 or less returns every remaining row.
+	public List<QuestionSummary> getQuestionFeedPage(QuestionSummary after, int limit, String owner,
+			boolean unresolvedOnly, String filterText) throws SQLException {
+		return getQuestionFeedPage(after, limit, owner, unresolvedOnly, filterText, FeedOrder.NEWEST);
+	}
+	
+	
+	// Return the next page of the question feed in the given order. For RECENT_ACTIVITY the cursor is
+	// (lastActivityAt, id), so pages still seek an index instead of skipping rows
+	public List<QuestionSummary> getQuestionFeedPage(QuestionSummary after, int limit, String owner,
+			boolean unresolvedOnly, String filterText, FeedOrder order) throws SQLException {
+		boolean byActivity = order == FeedOrder.RECENT_ACTIVITY;
+		StringBuilder q = new StringBuilder("SELECT id, userName, title, resolved, deleted, answerCount, commentCount, "
+				+ "lastActivityAt FROM questions WHERE deleted = FALSE");
+		if (after != null) {
+			if (byActivity) {
+				q.append(" AND (lastActivityAt < ? OR (lastActivityAt = ? AND id < ?))");
+			} else {
+				q.append(" AND id < ?");
+			}
+		}
+		if (owner != null) {
+			q.append(" AND userName = ?");
+		}
+		if (unresolvedOnly) {
+			q.append(" AND resolved = FALSE");
+		}
+		boolean filtered = filterText != null && !filterText.isEmpty();
+		if (filtered) {
+			q.append(" AND (LOWER(title) LIKE ? ESCAPE '\\' OR LOWER(body) LIKE ? ESCAPE '\\')");
+		}
+		q.append(byActivity ? " ORDER BY lastActivityAt DESC, id DESC" : " ORDER BY id DESC");
+		if (limit > 0) {
+			q.append(" LIMIT ?");
+		}
+		
+		try (PooledConnection connection = pool.borrow()) {
+			List<QuestionSummary> feed = new ArrayList<>();
+			PreparedStatement pstmt = connection.prepareStatement(q.toString());
+			int param = 1;
+			if (after != null) {
+				if (byActivity) {
+					pstmt.setTimestamp(param++, after.getLastActivityAt());
+					pstmt.setTimestamp(param++, after.getLastActivityAt());
+				}
+				pstmt.setInt(param++, after.getID());
+			}
+			if (owner != null) {
+				pstmt.setString(param++, owner);
+			}
+			if (filtered) {
+				String pattern = "%" + escapeLike(filterText.toLowerCase()) + "%";
+				pstmt.setString(param++, pattern);
+				pstmt.setString(param++, pattern);
+			}
+			if (limit > 0) {
+				pstmt.setInt(param++, limit);
+			}
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					feed.add(new QuestionSummary(rs.getInt("id"), rs.getString("userName"), rs.getString("title"),
+							rs.getBoolean("resolved"), rs.getBoolean("deleted"), rs.getInt("answerCount"),
+							rs.getInt("commentCount"), rs.getTimestamp("lastActivityAt")));
+				}
+			}
+			return feed;
+		}
+	}
+	
+	
+	// Escape LIKE wildcards so filter text is matched literally
+	private static String escapeLike(String text) {
+		return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+	
+	
+	// Load a question with its answers and comments for a viewing user.
+	// Served from the thread cache when possible. Returns null if no question has this id
+	public QuestionThread loadThread(int qID, String viewer) throws SQLException {
+		QuestionThread thread = threadCache.get(qID);
+		if (thread == null) {
+			long epoch = threadCache.beginLoad();
+			thread = readThread(qID);
+			if (thread == null) {
+				return null;
+			}
+			threadCache.put(qID, thread, epoch);
+		}
+		
+		// Show posts still waiting in the write-behind queue after the committed ones
+		List<Answer> answers = thread.getAnswers();
+		List<Comment> comments = thread.getComments();
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			List<Answer> pendingAnswers = queue.pendingAnswers(qID);
+			if (!pendingAnswers.isEmpty()) {
+				answers = new ArrayList<>(answers);
+				answers.addAll(pendingAnswers);
+			}
+			List<Comment> pendingComments = queue.pendingComments(qID);
+			if (!pendingComments.isEmpty()) {
+				comments = new ArrayList<>(comments);
+				comments.addAll(pendingComments);
+			}
+		}
+		
+		// Cached threads are shared between viewers, so ownership is worked out per call
+		boolean viewerOwns = thread.getUserName() != null && thread.getUserName().equals(viewer);
+		return new QuestionThread(qID, thread.getUserName(), thread.getTitle(), thread.getBody(), thread.isResolved(),
+				thread.isDeleted(), answers, comments, viewerOwns);
+	}
+	
+	
+	// Read a question with its answers and comments in two queries on one connection
+	private QuestionThread readThread(int qID) throws SQLException {
+		String questionAndAnswers = "SELECT q.userName, q.title, q.body, q.resolved, q.deleted, "
+				+ "a.id AS answerID, a.userName AS answerUser, a.content AS answerContent, a.resolves "
+				+ "FROM questions q LEFT JOIN answers a ON a.qID = q.id WHERE q.id = ? ORDER BY a.id";
+		String commentsQuery = "SELECT id, userName, content FROM comments WHERE qID = ? ORDER BY id";
+		
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(questionAndAnswers);
+			pstmt.setInt(1, qID);
+			
+			String userName = null, title = null, body = null;
+			boolean resolved = false, deleted = false, found = false;
+			List<Answer> answers = new ArrayList<>();
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					if (!found) {
+						found = true;
+						userName = rs.getString("userName");
+						title = rs.getString("title");
+						body = rs.getString("body");
+						resolved = rs.getBoolean("resolved");
+						deleted = rs.getBoolean("deleted");
+					}
+					// A question without answers still returns one row with null answer columns
+					int answerID = rs.getInt("answerID");
+					if (!rs.wasNull()) {
+						answers.add(new Answer(answerID, qID, rs.getString("answerUser"),
+								rs.getString("answerContent"), rs.getBoolean("resolves")));
+					}
+				}
+			}
+			if (!found) {
+				return null;
+			}
+			
+			PreparedStatement commentStmt = connection.prepareStatement(commentsQuery);
+			commentStmt.setInt(1, qID);
+			List<Comment> comments = new ArrayList<>();
+			try (ResultSet rs = commentStmt.executeQuery()) {
+				while (rs.next()) {
+					comments.add(new Comment(rs.getInt("id"), qID, rs.getString("userName"), rs.getString("content")));
+				}
+			}
+			
+			return new QuestionThread(qID, userName, title, body, resolved, deleted,
+					Collections.unmodifiableList(answers), Collections.unmodifiableList(comments), false);
+		}
+	}
+	
+	
+	// Rough memory footprint of a cached thread: two bytes per character plus a fixed cost per row
+	private static long estimateSize(QuestionThread thread) {
+		long size = 64 + 2L * (length(thread.getUserName()) + length(thread.getTitle()) + length(thread.getBody()));
+		for (Answer answer : thread.getAnswers()) {
+			size += 48 + 2L * (length(answer.getUserName()) + length(answer.getContent()));
+		}
+		for (Comment comment : thread.getComments()) {
+			size += 48 + 2L * (length(comment.getUserName()) + length(comment.getContent()));
+		}
+		return size;
+	}
+	
+	private static int length(String text) {
+		return text == null ? 0 : text.length();
+	}
+	
+	
 	// Return the title associated with a question id
 	public String getTitleFromQuestionID(int id) {
 		String q = "SELECT title FROM questions WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			ResultSet rs = pstmt.executeQuery();
 			if (rs.next()) {
@@ -120,7 +510,8 @@ public class QuestionsAnswersDatabase {
 		String q = "SELECT * FROM questions WHERE id = ?";
 		String out[] = new String[3];
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			ResultSet rs = pstmt.executeQuery();
 			if (rs.next()) {
@@ -140,7 +531,8 @@ public class QuestionsAnswersDatabase {
 	public boolean doesUserOwnQuestion(int id, String userName) {
 		String q = "SELECT userName FROM questions WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			ResultSet rs = pstmt.executeQuery();
 			if (rs.next()) {
@@ -160,11 +552,13 @@ public class QuestionsAnswersDatabase {
 	// 'Delete' a question by setting the deleted boolean to true
 	// Does not actually delete the question so it is still held in the database
 	public void deleteQuestion(int id) {
-		String q = "UPDATE questions SET deleted = TRUE WHERE id = ?";
+		String q = "UPDATE questions SET deleted = TRUE, deletedAt = CURRENT_TIMESTAMP WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			pstmt.executeUpdate();
+			threadCache.invalidate(id);
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -172,12 +566,88 @@ public class QuestionsAnswersDatabase {
 	}
 	
 	
-	// Return true if a question has been deleted
+	// Move up to limit questions that were deleted more than archiveAfterMillis ago, with their answers
+	// and comments, to the archive tables, and return how many moved. Each call is one short transaction
+	// that only touches deleted rows, found through idx_questions_deleted. Questions deleted before
+	// deletion times were recorded are archived on the first run
+	int archiveDeletedQuestions(long archiveAfterMillis, int limit) throws SQLException {
+		String pick = "SELECT id FROM questions WHERE deleted = TRUE AND (deletedAt IS NULL OR deletedAt < ?) "
+				+ "ORDER BY id FETCH FIRST ? ROWS ONLY";
+		String match = "deleted = TRUE AND (deletedAt IS NULL OR deletedAt < ?) AND id BETWEEN ? AND ?";
+		String lock = "SELECT id FROM questions WHERE " + match + " FOR UPDATE";
+		String archiveAnswers = "INSERT INTO answers_archive (id, qID, userName, content, resolves) "
+				+ "SELECT id, qID, userName, content, resolves FROM answers "
+				+ "WHERE qID IN (SELECT id FROM questions WHERE " + match + ")";
+		String archiveComments = "INSERT INTO comments_archive (id, qID, userName, content) "
+				+ "SELECT id, qID, userName, content FROM comments "
+				+ "WHERE qID IN (SELECT id FROM questions WHERE " + match + ")";
+		String questionColumns = "id, userName, title, body, deleted, resolved, answerCount, commentCount, "
+				+ "createdAt, lastActivityAt, deletedAt";
+		String archiveQuestions = "INSERT INTO questions_archive (" + questionColumns + ") "
+				+ "SELECT " + questionColumns + " FROM questions WHERE " + match;
+		// Answers and comments go with their question through ON DELETE CASCADE
+		String delete = "DELETE FROM questions WHERE " + match;
+		
+		Timestamp cutoff = new Timestamp(System.currentTimeMillis() - archiveAfterMillis);
+		List<Integer> ids = new ArrayList<>();
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement pstmt = connection.prepareStatement(pick);
+				pstmt.setTimestamp(1, cutoff);
+				pstmt.setInt(2, limit);
+				int first;
+				int last;
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (!rs.next()) {
+						connection.rollback();
+						return 0;
+					}
+					first = rs.getInt("id");
+					last = first;
+					while (rs.next()) {
+						last = rs.getInt("id");
+					}
+				}
+				
+				PreparedStatement lockStmt = connection.prepareStatement(lock);
+				bindArchiveRange(lockStmt, cutoff, first, last);
+				try (ResultSet rs = lockStmt.executeQuery()) {
+					while (rs.next()) {
+						ids.add(rs.getInt("id"));
+					}
+				}
+				for (String sql : new String[] { archiveAnswers, archiveComments, archiveQuestions, delete }) {
+					PreparedStatement step = connection.prepareStatement(sql);
+					bindArchiveRange(step, cutoff, first, last);
+					step.executeUpdate();
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+		for (int id : ids) {
+			threadCache.invalidate(id);
+		}
+		return ids.size();
+	}
+	
+	private static void bindArchiveRange(PreparedStatement pstmt, Timestamp cutoff, int first, int last) throws SQLException {
+		pstmt.setTimestamp(1, cutoff);
+		pstmt.setInt(2, first);
+		pstmt.setInt(3, last);
+	}
+	
+	// Return true if a question has been deleted, including questions already moved to the archive
 	public boolean isDeleted(int id) throws SQLException {
-		String q = "SELECT deleted FROM questions WHERE id = ?";
+		String q = "SELECT deleted FROM questions WHERE id = ? UNION ALL SELECT TRUE FROM questions_archive WHERE id = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, id);
+	        pstmt.setInt(2, id);
 	        ResultSet rs = pstmt.executeQuery();
 	        
 	        if (rs.next()) {
@@ -192,9 +662,11 @@ public class QuestionsAnswersDatabase {
 	public void resolveQuestion(int id) {
 		String q = "UPDATE questions SET resolved = TRUE WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			pstmt.executeUpdate();
+			threadCache.invalidate(id);
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -206,9 +678,11 @@ public class QuestionsAnswersDatabase {
 	public void unResolveQuestion(int id) {
 		String q = "UPDATE questions SET resolved = FALSE WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, id);
 			pstmt.executeUpdate();
+			threadCache.invalidate(id);
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -220,7 +694,8 @@ public class QuestionsAnswersDatabase {
 	public boolean isResolved(int id){
 		String q = "SELECT resolved FROM questions WHERE id = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, id);
 	        ResultSet rs = pstmt.executeQuery();
 	        if (rs.next()) {
@@ -236,12 +711,14 @@ public class QuestionsAnswersDatabase {
 	
 	// Update the body of a question to any new string
 	public void updateQuestion(int id, String updatedBody) {	
-		String q = "UPDATE questions SET body = ? WHERE id = ?";
+		String q = "UPDATE questions SET body = ?, lastActivityAt = CURRENT_TIMESTAMP WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setString(1, updatedBody);
 			pstmt.setInt(2, id);
 			pstmt.executeUpdate();
+			threadCache.invalidate(id);
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -251,9 +728,10 @@ public class QuestionsAnswersDatabase {
 	
 	// Return the number of answers for any question
 	public int numAnswers(int qID) throws SQLException {
-		String q = "SELECT COUNT(*) AS count FROM answers WHERE qID = ?";
+		String q = "SELECT answerCount AS count FROM questions WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, qID);
 			ResultSet rs = pstmt.executeQuery();
 			if (rs.next()) {
@@ -265,24 +743,84 @@ public class QuestionsAnswersDatabase {
 	
 	
 	// Adds an answer to a question
+	// The answer and the question's counter are written in the same transaction
 	public void addAnswer(Answer answer) throws SQLException{
-		String q = "INSERT INTO answers (qID, userName, content) VALUES (?, ?, ?)";
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			queue.submit(answer);
+		} else {
+			writePosts(List.of(answer), List.of());
+		}
+	}
+	
+	
+	// Insert a group of answers and comments and bump their questions' counters in one transaction.
+	// Used directly for single posts and by the write-behind queue for group commits
+	void writePosts(List<Answer> answers, List<Comment> comments) throws SQLException {
+		String insertAnswer = "INSERT INTO answers (qID, userName, content) VALUES (?, ?, ?)";
+		String insertComment = "INSERT INTO comments (qID, userName, content) VALUES (?, ?, ?)";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
-			pstmt.setInt(1, answer.getQID());
-			pstmt.setString(2, answer.getUserName());
-			pstmt.setString(3, answer.getContent());
-			pstmt.executeUpdate();
+		// Net counter changes per question, so a busy question gets one counter update per group
+		Map<Integer, int[]> deltas = new HashMap<>();
+		
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				if (!answers.isEmpty()) {
+					PreparedStatement pstmt = connection.prepareStatement(insertAnswer);
+					for (Answer answer : answers) {
+						pstmt.setInt(1, answer.getQID());
+						pstmt.setString(2, answer.getUserName());
+						pstmt.setString(3, answer.getContent());
+						pstmt.addBatch();
+						deltas.computeIfAbsent(answer.getQID(), k -> new int[2])[0]++;
+					}
+					pstmt.executeBatch();
+				}
+				if (!comments.isEmpty()) {
+					PreparedStatement pstmt = connection.prepareStatement(insertComment);
+					for (Comment comment : comments) {
+						pstmt.setInt(1, comment.getQID());
+						pstmt.setString(2, comment.getUserName());
+						pstmt.setString(3, comment.getContent());
+						pstmt.addBatch();
+						deltas.computeIfAbsent(comment.getQID(), k -> new int[2])[1]++;
+					}
+					pstmt.executeBatch();
+				}
+				for (Map.Entry<Integer, int[]> delta : deltas.entrySet()) {
+					if (delta.getValue()[0] != 0) {
+						adjustCounter(connection, "answerCount", delta.getKey(), delta.getValue()[0]);
+					}
+					if (delta.getValue()[1] != 0) {
+						adjustCounter(connection, "commentCount", delta.getKey(), delta.getValue()[1]);
+					}
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+		for (Integer qID : deltas.keySet()) {
+			threadCache.invalidate(qID);
 		}
 	}
 	
 	
+	// Delete an answer and decrement its question's counter in one transaction
+	public void deleteAnswer(int answerID) throws SQLException {
+		deleteChild("answers", "answerCount", answerID);
+	}
+	
+	
 	// Return an array list of arrays of strings containing the user name and content associated with answers
 	public List<String[]> getAnswers(int qID) {
 		String q = "SELECT userName, content FROM answers WHERE qID = ?";
 		List<String[]> answers = new ArrayList<>();
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, qID);
 			ResultSet rs = pstmt.executeQuery();
 			while (rs.next()) {
@@ -300,7 +838,8 @@ public class QuestionsAnswersDatabase {
 	public int getAnswerID(int qID, int answerCount){
 		String q = "SELECT id FROM answers WHERE qID = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, qID);
 	        ResultSet rs = pstmt.executeQuery();
 	        int counter = 0;
@@ -323,19 +862,65 @@ public class QuestionsAnswersDatabase {
 		clearResolves(id, answerID);
 		String q = "UPDATE answers SET resolves = TRUE WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, answerID);
 			pstmt.executeUpdate();
+			threadCache.invalidate(id);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
 	}
 	
 	
+	// Accept one answer for a question in a single transaction: the question is marked resolved,
+	// any previously accepted answer is cleared, and the chosen answer is flagged.
+	// Updating the question row first locks it, so concurrent accepts on the same question run one
+	// after another and exactly one answer ends up accepted. Only the rows whose flag changes are written.
+	// Returns false, changing nothing, if the answer does not belong to the question
+	public boolean acceptAnswer(int qID, int answerID) throws SQLException {
+		String resolve = "UPDATE questions SET resolved = TRUE, lastActivityAt = CURRENT_TIMESTAMP WHERE id = ?";
+		String clear = "UPDATE answers SET resolves = FALSE WHERE qID = ? AND resolves = TRUE AND id <> ?";
+		String accept = "UPDATE answers SET resolves = TRUE WHERE id = ? AND qID = ?";
+		
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement pstmt = connection.prepareStatement(resolve);
+				pstmt.setInt(1, qID);
+				if (pstmt.executeUpdate() == 0) {
+					connection.rollback();
+					return false;
+				}
+				
+				PreparedStatement clearStmt = connection.prepareStatement(clear);
+				clearStmt.setInt(1, qID);
+				clearStmt.setInt(2, answerID);
+				clearStmt.executeUpdate();
+				
+				PreparedStatement acceptStmt = connection.prepareStatement(accept);
+				acceptStmt.setInt(1, answerID);
+				acceptStmt.setInt(2, qID);
+				if (acceptStmt.executeUpdate() == 0) {
+					connection.rollback();
+					return false;
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+		threadCache.invalidate(qID);
+		return true;
+	}
+	
+	
 	public boolean doesAnswerResolve(int answerID) {
 		String q = "SELECT resolves FROM answers WHERE id = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, answerID);
 	        ResultSet rs = pstmt.executeQuery();
 	        if (rs.next()) {
@@ -352,9 +937,11 @@ public class QuestionsAnswersDatabase {
 	public void clearResolves(int qID, int answerID) {
 		String q = "UPDATE answers SET resolves = FALSE WHERE qID = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, qID);
 	        pstmt.executeUpdate();
+	        threadCache.invalidate(qID);
 	        
 	    } catch (SQLException e) {
 	    	e.printStackTrace();
@@ -364,9 +951,10 @@ public class QuestionsAnswersDatabase {
 	//comment implementation in database
 	
 	public int numComments(int qID) throws SQLException {
-		String q = "SELECT COUNT(*) AS count FROM comments WHERE qID = ?";
+		String q = "SELECT commentCount AS count FROM questions WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, qID);
 			ResultSet rs = pstmt.executeQuery();
 			if (rs.next()) {
@@ -378,14 +966,62 @@ public class QuestionsAnswersDatabase {
 	
 	
 	// Adds an comment to a question
+	// The comment and the question's counter are written in the same transaction
 	public void addComments(Comment comment) throws SQLException{
-		String q = "INSERT INTO comments (qID, userName, content) VALUES (?, ?, ?)";
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			queue.submit(comment);
+		} else {
+			writePosts(List.of(), List.of(comment));
+		}
+	}
+	
+	
+	// Delete a comment and decrement its question's counter in one transaction
+	public void deleteComment(int commentID) throws SQLException {
+		deleteChild("comments", "commentCount", commentID);
+	}
+	
+	
+	// Add delta to one of a question's counters and mark the question as active.
+	// Runs on the caller's connection so it joins the caller's transaction
+	private void adjustCounter(PooledConnection connection, String counter, int qID, int delta) throws SQLException {
+		String q = "UPDATE questions SET " + counter + " = " + counter + " + ?, lastActivityAt = CURRENT_TIMESTAMP WHERE id = ?";
+		PreparedStatement pstmt = connection.prepareStatement(q);
+		pstmt.setInt(1, delta);
+		pstmt.setInt(2, qID);
+		pstmt.executeUpdate();
+	}
+	
+	
+	// Delete one answer or comment row and decrement the matching counter on its question
+	private void deleteChild(String table, String counter, int childID) throws SQLException {
+		String select = "SELECT qID FROM " + table + " WHERE id = ? FOR UPDATE";
+		String delete = "DELETE FROM " + table + " WHERE id = ?";
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
-			pstmt.setInt(1, comment.getQID());
-			pstmt.setString(2, comment.getUserName());
-			pstmt.setString(3, comment.getContent());
-			pstmt.executeUpdate();
+		try (PooledConnection connection = pool.borrow()) {
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement find = connection.prepareStatement(select);
+				find.setInt(1, childID);
+				int qID;
+				try (ResultSet rs = find.executeQuery()) {
+					if (!rs.next()) {
+						connection.rollback();
+						return;
+					}
+					qID = rs.getInt("qID");
+				}
+				PreparedStatement pstmt = connection.prepareStatement(delete);
+				pstmt.setInt(1, childID);
+				pstmt.executeUpdate();
+				adjustCounter(connection, counter, qID, -1);
+				connection.commit();
+				threadCache.invalidate(qID);
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
 		}
 	}
 	
@@ -395,7 +1031,8 @@ public class QuestionsAnswersDatabase {
 		String q = "SELECT userName, content FROM comments WHERE qID = ?";
 		List<String[]> comments = new ArrayList<>();
 		
-		try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+		try (PooledConnection connection = pool.borrow()) {
+			PreparedStatement pstmt = connection.prepareStatement(q);
 			pstmt.setInt(1, qID);
 			ResultSet rs = pstmt.executeQuery();
 			while (rs.next()) {
@@ -413,7 +1050,8 @@ public class QuestionsAnswersDatabase {
 	public int getCommentID(int qID, int commentCount){
 		String q = "SELECT id FROM comments WHERE qID = ?";
 	    
-	    try (PreparedStatement pstmt = connection.prepareStatement(q)) {
+	    try (PooledConnection connection = pool.borrow()) {
+	        PreparedStatement pstmt = connection.prepareStatement(q);
 	        pstmt.setInt(1, qID);
 	        ResultSet rs = pstmt.executeQuery();
 	        int counter = 0;
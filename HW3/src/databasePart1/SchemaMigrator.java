@@ -0,0 +1,127 @@
+package databasePart1;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SchemaMigrator brings a database up to date with an ordered list of migrations.
+ * Applied versions are recorded in a schema_version table together with a checksum of their SQL,
+ * so a migration that was edited after it ran is reported instead of silently skipped.
+ */
+public class SchemaMigrator {
+
+	private static final String VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version ("
+			+ "version INT PRIMARY KEY, "
+			+ "description VARCHAR(255), "
+			+ "checksum BIGINT, "
+			+ "installedOn TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+	private final ConnectionPool pool;
+
+	public SchemaMigrator(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	// Validate the applied migrations and run any pending ones in version order.
+	// Returns the number of migrations applied
+	public int migrate(List<Migration> migrations) throws SQLException {
+		List<Migration> ordered = new ArrayList<>(migrations);
+		ordered.sort(Comparator.comparingInt(Migration::getVersion));
+		for (int i = 1; i < ordered.size(); i++) {
+			if (ordered.get(i).getVersion() == ordered.get(i - 1).getVersion()) {
+				throw new IllegalArgumentException("Duplicate migration version " + ordered.get(i).getVersion());
+			}
+		}
+
+		// Serialize migrations within this JVM so two helpers on one database do not race
+		synchronized (SchemaMigrator.class) {
+			try (PooledConnection connection = pool.borrow()) {
+				connection.createStatement().execute(VERSION_TABLE);
+				Map<Integer, Long> applied = readApplied(connection);
+				validate(ordered, applied);
+
+				int count = 0;
+				for (Migration migration : ordered) {
+					if (applied.containsKey(migration.getVersion())) {
+						continue;
+					}
+					apply(connection, migration);
+					count++;
+				}
+				return count;
+			}
+		}
+	}
+
+	// Return the highest applied version, or 0 for an empty database
+	public int currentVersion() throws SQLException {
+		try (PooledConnection connection = pool.borrow()) {
+			connection.createStatement().execute(VERSION_TABLE);
+			int max = 0;
+			for (int version : readApplied(connection).keySet()) {
+				max = Math.max(max, version);
+			}
+			return max;
+		}
+	}
+
+	private Map<Integer, Long> readApplied(PooledConnection connection) throws SQLException {
+		Map<Integer, Long> applied = new HashMap<>();
+		try (ResultSet rs = connection.createStatement().executeQuery("SELECT version, checksum FROM schema_version")) {
+			while (rs.next()) {
+				applied.put(rs.getInt("version"), rs.getLong("checksum"));
+			}
+		}
+		return applied;
+	}
+
+	// Every applied version must still exist with the same checksum
+	private void validate(List<Migration> ordered, Map<Integer, Long> applied) throws SQLException {
+		Map<Integer, Migration> known = new HashMap<>();
+		for (Migration migration : ordered) {
+			known.put(migration.getVersion(), migration);
+		}
+		for (Map.Entry<Integer, Long> entry : applied.entrySet()) {
+			Migration migration = known.get(entry.getKey());
+			if (migration == null) {
+				throw new SQLException("Database has schema version " + entry.getKey()
+						+ " which this application does not know about");
+			}
+			if (migration.getChecksum() != entry.getValue()) {
+				throw new SQLException("Checksum mismatch for schema version " + entry.getKey()
+						+ " (" + migration.getDescription() + "); applied migrations must not be edited");
+			}
+		}
+	}
+
+	// Run one migration and record it, rolling back what the database allows if a statement fails
+	private void apply(PooledConnection connection, Migration migration) throws SQLException {
+		System.out.println("Applying schema version " + migration.getVersion() + ": " + migration.getDescription());
+		connection.setAutoCommit(false);
+		try {
+			Statement stmt = connection.createStatement();
+			for (String sql : migration.getStatements()) {
+				stmt.execute(sql);
+			}
+			PreparedStatement record = connection.prepareStatement(
+					"INSERT INTO schema_version (version, description, checksum) VALUES (?, ?, ?)");
+			record.setInt(1, migration.getVersion());
+			record.setString(2, migration.getDescription());
+			record.setLong(3, migration.getChecksum());
+			record.executeUpdate();
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw new SQLException("Schema version " + migration.getVersion() + " failed: " + e.getMessage(), e);
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+}
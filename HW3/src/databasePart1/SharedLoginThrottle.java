@@ -0,0 +1,125 @@
+package databasePart1;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The SharedLoginThrottle class limits failed attempts per user name across every process that uses
+ * the same database. Each attempt is first checked against this process's own counts, so a name that
+ * is already over the limit here is refused without any SQL. It is then checked against the
+ * LoginAttempts table with one read on its primary key, without locks or a transaction.
+ * Only failures are written to the table, each as a single UPDATE that counts attempts in a fixed window
+ * starting at the first one. A successful login clears the table only for a name it has seen there.
+ * Parallel guesses in several processes can each pass the read before the others' failures are written,
+ * so a burst gets at most the limit once per process.
+ */
+public class SharedLoginThrottle extends LoginThrottle {
+
+	// How many times a failure is retried when another process inserts the same name first
+	private static final int RECORD_ATTEMPTS = 3;
+
+	private final DatabaseHelper databaseHelper;
+
+	public SharedLoginThrottle(DatabaseHelper databaseHelper, int maxFailures, long windowMillis) {
+		super(maxFailures, windowMillis);
+		this.databaseHelper = databaseHelper;
+	}
+
+	// Reserve the attempt here, then throw if the shared table has the name at the limit
+	@Override
+	public void check(String userName) throws SQLException {
+		super.check(userName);
+		if (userName == null) {
+			return;
+		}
+		String select = "SELECT windowStart, attempts FROM LoginAttempts WHERE userName = ?";
+		long now = System.currentTimeMillis();
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(select);
+			pstmt.setString(1, userName);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (!rs.next()) {
+					return;
+				}
+				long windowEnd = rs.getLong("windowStart") + getWindowMillis();
+				if (windowEnd <= now) {
+					// An old window no longer counts; the next failure starts a new one
+					return;
+				}
+				markShared(userName);
+				if (rs.getInt("attempts") >= getMaxFailures()) {
+					throw rejected(userName, Math.max(1, windowEnd - now));
+				}
+			}
+		}
+	}
+
+	// Count a failed attempt here and in the shared table
+	@Override
+	public void recordFailure(String userName) {
+		super.recordFailure(userName);
+		if (userName == null) {
+			return;
+		}
+		try {
+			increment(userName, System.currentTimeMillis());
+			markShared(userName);
+		} catch (SQLException e) {
+			// This process still counts the failure in its own window
+			e.printStackTrace();
+		}
+	}
+
+	// Forget a user name's attempts here, and in the shared table if it has any there
+	@Override
+	public void recordSuccess(String userName) {
+		if (userName == null || !forget(userName)) {
+			return;
+		}
+		String delete = "DELETE FROM LoginAttempts WHERE userName = ?";
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			PreparedStatement pstmt = connection.prepareStatement(delete);
+			pstmt.setString(1, userName);
+			pstmt.executeUpdate();
+		} catch (SQLException e) {
+			// The count runs out with its window anyway
+			e.printStackTrace();
+		}
+	}
+
+	// Add one failure for a user name, starting a new window if the old one has ended. The UPDATE reads
+	// and writes the row in one statement; only the first failure for a name needs the INSERT
+	private void increment(String userName, long now) throws SQLException {
+		String update = "UPDATE LoginAttempts SET "
+				+ "attempts = CASE WHEN windowStart <= ? THEN 1 ELSE attempts + 1 END, "
+				+ "windowStart = CASE WHEN windowStart <= ? THEN ? ELSE windowStart END "
+				+ "WHERE userName = ?";
+		String insert = "INSERT INTO LoginAttempts (userName, windowStart, attempts) VALUES (?, ?, 1)";
+		long expired = now - getWindowMillis();
+		try (PooledConnection connection = databaseHelper.borrowConnection()) {
+			for (int attempt = 1; ; attempt++) {
+				PreparedStatement pstmt = connection.prepareStatement(update);
+				pstmt.setLong(1, expired);
+				pstmt.setLong(2, expired);
+				pstmt.setLong(3, now);
+				pstmt.setString(4, userName);
+				if (pstmt.executeUpdate() > 0) {
+					return;
+				}
+				try {
+					PreparedStatement pstmt2 = connection.prepareStatement(insert);
+					pstmt2.setString(1, userName);
+					pstmt2.setLong(2, now);
+					pstmt2.executeUpdate();
+					return;
+				} catch (SQLException e) {
+					// Another process inserted the first failure for this name; update its row instead
+					if (!DatabaseHelper.isDuplicateKey(e) || attempt >= RECORD_ATTEMPTS) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+}
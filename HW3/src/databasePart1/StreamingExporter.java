@@ -0,0 +1,243 @@
+package databasePart1;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import application.Role;
+
+/**
+ * The StreamingExporter class writes the questions, answers, comments and users tables to a JSONL or
+ * CSV dump that the BulkImporter can read back. Each table is walked with a forward-only, read-only
+ * cursor and every row is written as soon as it is read, so memory use does not grow with the size of
+ * the database. The question tables are read in one snapshot transaction, so a dump never holds an
+ * answer or comment whose question it left out, however much is written while the export runs.
+ * Passwords are never exported.
+ */
+public class StreamingExporter {
+
+	// Rows the driver fetches per round trip
+	static final int FETCH_SIZE = 1000;
+
+	// Characters buffered before they are encoded and handed to the file channel
+	static final int WRITE_BUFFER_CHARS = 64 * 1024;
+
+	private final QuestionsAnswersDatabase qaDatabase;
+	private final DatabaseHelper userDatabase;
+
+	// Either database may be null to leave its tables out of the dump
+	public StreamingExporter(QuestionsAnswersDatabase qaDatabase, DatabaseHelper userDatabase) {
+		this.qaDatabase = qaDatabase;
+		this.userDatabase = userDatabase;
+	}
+
+	// Export to a file, choosing the format from its extension; the file is replaced if it exists
+	public long exportFile(Path file) throws IOException, SQLException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				Writer out = new BufferedWriter(
+						Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), WRITE_BUFFER_CHARS),
+						WRITE_BUFFER_CHARS)) {
+			return exportTo(out, DumpFormat.forFile(file));
+		}
+	}
+
+	// Export every table to a writer and return the number of records written.
+	// Questions are written before answers and comments so the dump imports in one pass
+	public long exportTo(Writer out, DumpFormat format) throws IOException, SQLException {
+		long start = System.nanoTime();
+		long rows = 0;
+		writeHeader(out, format);
+
+		if (qaDatabase != null) {
+			try (PooledConnection connection = qaDatabase.borrowConnection()) {
+				connection.setAutoCommit(false);
+				int isolation = connection.getConnection().getTransactionIsolation();
+				execute(connection, "SET SESSION CHARACTERISTICS AS TRANSACTION ISOLATION LEVEL SNAPSHOT");
+				try {
+					rows += exportTable(connection, out, format, "question",
+							"SELECT id, userName, title, body, resolved, deleted FROM questions ORDER BY id");
+					rows += exportTable(connection, out, format, "answer",
+							"SELECT id, qID, userName, content, resolves FROM answers ORDER BY id");
+					rows += exportTable(connection, out, format, "comment",
+							"SELECT id, qID, userName, content FROM comments ORDER BY id");
+					connection.commit();
+				} catch (SQLException | IOException | RuntimeException e) {
+					connection.rollback();
+					throw e;
+				} finally {
+					connection.getConnection().setTransactionIsolation(isolation);
+				}
+			}
+		}
+		if (userDatabase != null) {
+			try (PooledConnection connection = userDatabase.borrowConnection()) {
+				rows += exportTable(connection, out, format, "user",
+						"SELECT id, userName, roles FROM cse360users ORDER BY id");
+			}
+		}
+		out.flush();
+
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		System.out.println("Exported " + rows + " rows in " + millis + " ms");
+		return rows;
+	}
+
+	// Stream one query's rows to the writer
+	private long exportTable(PooledConnection connection, Writer out, DumpFormat format, String type, String query)
+			throws IOException, SQLException {
+		long rows = 0;
+		// Ask H2 to produce rows as the cursor advances instead of materializing the whole result first
+		execute(connection, "SET LAZY_QUERY_EXECUTION 1");
+		try (PreparedStatement pstmt = connection.getConnection().prepareStatement(query,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			pstmt.setFetchSize(FETCH_SIZE);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				Map<String, Object> record = new LinkedHashMap<>();
+				while (rs.next()) {
+					record.clear();
+					record.put("type", type);
+					readRow(type, rs, record);
+					write(out, format, record);
+					rows++;
+				}
+			}
+		} finally {
+			execute(connection, "SET LAZY_QUERY_EXECUTION 0");
+		}
+		return rows;
+	}
+
+	// Run one setting change on its own statement
+	private static void execute(PooledConnection connection, String sql) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute(sql);
+		}
+	}
+
+	// Map the current row to dump fields
+	private static void readRow(String type, ResultSet rs, Map<String, Object> record) throws SQLException {
+		record.put("id", rs.getInt("id"));
+		switch (type) {
+		case "question":
+			record.put("userName", rs.getString("userName"));
+			record.put("title", rs.getString("title"));
+			record.put("text", rs.getString("body"));
+			record.put("resolved", rs.getBoolean("resolved"));
+			record.put("deleted", rs.getBoolean("deleted"));
+			break;
+		case "answer":
+			record.put("qID", rs.getInt("qID"));
+			record.put("userName", rs.getString("userName"));
+			record.put("text", rs.getString("content"));
+			record.put("resolves", rs.getBoolean("resolves"));
+			break;
+		case "comment":
+			record.put("qID", rs.getInt("qID"));
+			record.put("userName", rs.getString("userName"));
+			record.put("text", rs.getString("content"));
+			break;
+		case "user":
+			record.put("userName", rs.getString("userName"));
+			record.put("roles", Role.format(Role.fromMask(rs.getInt("roles"))));
+			break;
+		default:
+			break;
+		}
+	}
+
+	// Write anything that has to come before the first record
+	private static void writeHeader(Writer out, DumpFormat format) throws IOException {
+		if (format == DumpFormat.CSV) {
+			for (int i = 0; i < DumpFormat.COLUMNS.length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				out.write(DumpFormat.COLUMNS[i]);
+			}
+			out.write('\n');
+		}
+	}
+
+	// Write one record; values may be strings, numbers, booleans or null
+	private static void write(Writer out, DumpFormat format, Map<String, Object> record) throws IOException {
+		if (format == DumpFormat.CSV) {
+			for (int i = 0; i < DumpFormat.COLUMNS.length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				Object value = record.get(DumpFormat.COLUMNS[i]);
+				if (value != null) {
+					writeCsvField(out, value.toString());
+				}
+			}
+			out.write('\n');
+			return;
+		}
+
+		out.write('{');
+		boolean first = true;
+		for (Map.Entry<String, Object> field : record.entrySet()) {
+			if (!first) {
+				out.write(',');
+			}
+			first = false;
+			writeJsonString(out, field.getKey());
+			out.write(':');
+			Object value = field.getValue();
+			if (value == null) {
+				out.write("null");
+			} else if (value instanceof Number || value instanceof Boolean) {
+				out.write(value.toString());
+			} else {
+				writeJsonString(out, value.toString());
+			}
+		}
+		out.write("}\n");
+	}
+
+	// Empty strings are quoted, so they read back as "" rather than as a missing value
+	private static void writeCsvField(Writer out, String value) throws IOException {
+		boolean quote = value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+				|| value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
+
+	private static void writeJsonString(Writer out, String value) throws IOException {
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': out.write("\\\""); break;
+			case '\\': out.write("\\\\"); break;
+			case '\n': out.write("\\n"); break;
+			case '\r': out.write("\\r"); break;
+			case '\t': out.write("\\t"); break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+}
@@ -0,0 +1,24 @@
+package databasePart1;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when a login or one time password attempt is refused because the user name
+ * has had too many failed attempts recently.
+ */
+public class ThrottledException extends SQLException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	public ThrottledException(String userName, long retryAfterMillis) {
+		super("Too many failed attempts for " + userName + ", try again later");
+		this.retryAfterMillis = Math.max(0, retryAfterMillis);
+	}
+
+	// Roughly how long until the next attempt may be allowed
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
@@ -0,0 +1,343 @@
+package databasePart1;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import application.Answer;
+import application.Comment;
+
+/**
+ * The WriteBehindQueue class collects new answers and comments in a bounded queue and writes them
+ * with a single writer thread, many posts per transaction. During a burst of posts this turns
+ * hundreds of small commits into a few larger ones. If a group fails, each of its posts is written
+ * again on its own, so one bad post does not take the rest of the group down with it.
+ * How long the writer waits to fill a group, whether callers wait for the commit, and what happens
+ * when the queue is full are all chosen by the caller.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+	/**
+	 * When a post counts as saved.
+	 */
+	public enum Durability {
+		// The caller waits until the group holding its post has committed
+		ON_COMMIT,
+		// The caller returns as soon as the post is queued; a crash can lose queued posts
+		ON_ENQUEUE
+	}
+
+	/**
+	 * What a caller does when the queue is full.
+	 */
+	public enum Backpressure {
+		// Wait for room in the queue
+		BLOCK,
+		// Write the post directly on the caller's thread
+		CALLER_RUNS,
+		// Fail the post with an SQLException
+		REJECT
+	}
+
+	// How long close() waits for the writer to drain the queue, and then for it to stop once interrupted
+	private static final long SHUTDOWN_WAIT_MILLIS = 10000;
+	private static final long INTERRUPT_WAIT_MILLIS = 1000;
+
+	// How long an ON_COMMIT caller waits for its group to commit before giving up
+	private static final long COMMIT_WAIT_MILLIS = 30000;
+
+	// How often an idle writer checks whether the queue was closed. The writer is only interrupted when
+	// close() has given up waiting for it, since interrupting H2 file I/O can close the database file
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	private final QuestionsAnswersDatabase database;
+	private final BlockingQueue<Pending> queue;
+	private final int maxBatch;
+	private final long maxDelayMillis;
+	private final Durability durability;
+	private final Backpressure backpressure;
+
+	private final Thread writer;
+	private final Thread shutdownHook;
+	private volatile boolean closed = false;
+
+	// The group the writer is committing right now, so reads can still see it
+	private volatile List<Pending> inFlight = Collections.emptyList();
+
+	// One queued answer or comment and the future completed when it is committed
+	private static final class Pending {
+		final Answer answer;
+		final Comment comment;
+		final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+		Pending(Answer answer, Comment comment) {
+			this.answer = answer;
+			this.comment = comment;
+		}
+
+		int getQID() {
+			return answer != null ? answer.getQID() : comment.getQID();
+		}
+	}
+
+	// capacity bounds the queue, maxBatch bounds one group commit, and maxDelayMillis is how long the
+	// writer waits for more posts before committing a group that is not yet full
+	public WriteBehindQueue(QuestionsAnswersDatabase database, int capacity, int maxBatch, long maxDelayMillis,
+			Durability durability, Backpressure backpressure) {
+		this.database = database;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.maxBatch = maxBatch;
+		this.maxDelayMillis = maxDelayMillis;
+		this.durability = durability;
+		this.backpressure = backpressure;
+
+		writer = new Thread(this::writeLoop, "write-behind");
+		writer.setDaemon(true);
+		writer.start();
+
+		// Flush queued posts if the JVM exits without closing the database
+		shutdownHook = new Thread(this::drain, "write-behind-flush");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	// Queue an answer
+	public void submit(Answer answer) throws SQLException {
+		submit(new Pending(answer, null));
+	}
+
+	// Queue a comment
+	public void submit(Comment comment) throws SQLException {
+		submit(new Pending(null, comment));
+	}
+
+	private void submit(Pending post) throws SQLException {
+		if (closed) {
+			throw new SQLException("Write-behind queue is closed");
+		}
+		if (!queue.offer(post)) {
+			switch (backpressure) {
+			case BLOCK:
+				try {
+					queue.put(post);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted waiting for room in the write-behind queue", e);
+				}
+				break;
+			case CALLER_RUNS:
+				database.writePosts(answersOf(List.of(post)), commentsOf(List.of(post)));
+				return;
+			case REJECT:
+				throw new SQLException("Write-behind queue is full");
+			}
+		}
+		// A post queued after the queue was drained for the last time would never be written. If it is
+		// still in the queue it is taken back and failed; otherwise the writer or drain() owns it
+		if (closed && queue.remove(post)) {
+			throw new SQLException("Write-behind queue is closed");
+		}
+		if (durability == Durability.ON_COMMIT) {
+			await(post);
+		}
+	}
+
+	// Answers for a question that are queued or being written but not yet committed
+	public List<Answer> pendingAnswers(int qID) {
+		List<Answer> answers = new ArrayList<>();
+		for (Pending post : snapshot()) {
+			if (post.answer != null && post.getQID() == qID) {
+				answers.add(post.answer);
+			}
+		}
+		return answers;
+	}
+
+	// Comments for a question that are queued or being written but not yet committed
+	public List<Comment> pendingComments(int qID) {
+		List<Comment> comments = new ArrayList<>();
+		for (Pending post : snapshot()) {
+			if (post.comment != null && post.getQID() == qID) {
+				comments.add(post.comment);
+			}
+		}
+		return comments;
+	}
+
+	// Number of posts waiting for the writer
+	public int size() {
+		return queue.size();
+	}
+
+	// Stop accepting posts and wait for the writer to commit everything already queued
+	@Override
+	public void close() {
+		drain();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// Already shutting down; the hook is running or has run
+		}
+	}
+
+	private void drain() {
+		closed = true;
+		boolean interrupted = false;
+		try {
+			writer.join(SHUTDOWN_WAIT_MILLIS);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+		if (writer.isAlive()) {
+			// The writer is stuck on a commit; interrupt it and give it a moment to stop
+			writer.interrupt();
+			try {
+				writer.join(INTERRUPT_WAIT_MILLIS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		List<Pending> rest = new ArrayList<>();
+		queue.drainTo(rest);
+		if (!writer.isAlive()) {
+			// Anything that slipped in as the writer stopped is written here
+			if (!rest.isEmpty()) {
+				writeGroup(rest);
+			}
+		} else if (!rest.isEmpty()) {
+			// Writing these here would race the writer's own commit, so they are failed and reported instead
+			SQLException error = new SQLException("Write-behind writer did not stop; the post was not written");
+			for (Pending post : rest) {
+				post.committed.completeExceptionally(error);
+			}
+			System.err.println("Write-behind queue closed with " + rest.size() + " posts not written");
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Take a group of posts, commit them together, repeat; once closed, stop when the queue is empty
+	private void writeLoop() {
+		List<Pending> group = new ArrayList<>(maxBatch);
+		while (true) {
+			group.clear();
+			try {
+				Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+				group.add(first);
+				fillGroup(group);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			writeGroup(group);
+		}
+	}
+
+	// Wait up to maxDelayMillis for more posts, stopping early once the group is full
+	private void fillGroup(List<Pending> group) throws InterruptedException {
+		queue.drainTo(group, maxBatch - group.size());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		while (group.size() < maxBatch && !closed) {
+			long wait = deadline - System.nanoTime();
+			if (wait <= 0) {
+				break;
+			}
+			Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			group.add(next);
+			queue.drainTo(group, maxBatch - group.size());
+		}
+	}
+
+	private void writeGroup(List<Pending> group) {
+		inFlight = new ArrayList<>(group);
+		try {
+			if (group.size() == 1) {
+				writeOne(group.get(0));
+				return;
+			}
+			try {
+				database.writePosts(answersOf(group), commentsOf(group));
+				for (Pending post : group) {
+					post.committed.complete(null);
+				}
+			} catch (SQLException | RuntimeException e) {
+				// The group was rolled back; write each post on its own so only the bad ones fail
+				for (Pending post : group) {
+					writeOne(post);
+				}
+			}
+		} finally {
+			inFlight = Collections.emptyList();
+		}
+	}
+
+	private void writeOne(Pending post) {
+		try {
+			database.writePosts(answersOf(List.of(post)), commentsOf(List.of(post)));
+			post.committed.complete(null);
+		} catch (SQLException | RuntimeException e) {
+			e.printStackTrace();
+			post.committed.completeExceptionally(e);
+		}
+	}
+
+	private List<Pending> snapshot() {
+		List<Pending> posts = new ArrayList<>(inFlight);
+		posts.addAll(queue);
+		return posts;
+	}
+
+	private static List<Answer> answersOf(List<Pending> posts) {
+		List<Answer> answers = new ArrayList<>();
+		for (Pending post : posts) {
+			if (post.answer != null) {
+				answers.add(post.answer);
+			}
+		}
+		return answers;
+	}
+
+	private static List<Comment> commentsOf(List<Pending> posts) {
+		List<Comment> comments = new ArrayList<>();
+		for (Pending post : posts) {
+			if (post.comment != null) {
+				comments.add(post.comment);
+			}
+		}
+		return comments;
+	}
+
+	private static void await(Pending post) throws SQLException {
+		try {
+			post.committed.get(COMMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for the write-behind commit", e);
+		} catch (TimeoutException e) {
+			throw new SQLException("Timed out waiting for the write-behind commit; the post may still be written", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			throw new SQLException("Write-behind commit failed", cause);
+		}
+	}
+}
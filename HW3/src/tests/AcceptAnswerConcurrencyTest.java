@@ -0,0 +1,107 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Answer;
+import application.QuestionThread;
+import databasePart1.AppConfig;
+import databasePart1.QuestionsAnswersDatabase;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency tests for accepting an answer.
+ * <p>
+ * Many threads try to accept different answers for the same question at the same moment.
+ * Whatever order they run in, the question must end up resolved with exactly one accepted answer.
+ * </p>
+ */
+public class AcceptAnswerConcurrencyTest {
+
+    private static final int ANSWERS = 8;
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 20;
+
+    private static TestDatabases databases;
+    private static QuestionsAnswersDatabase qaDatabase;
+    private static int questionID;
+    private static List<Integer> answerIDs = new ArrayList<>();
+
+    /**
+     * Creates one question with several answers in an in-memory database.
+     *
+     * @throws SQLException if there is an error during database initialization.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        Properties settings = new Properties();
+        settings.setProperty(AppConfig.H2_LOCK_TIMEOUT.getKey(), "10000");
+        databases = new TestDatabases("AcceptAnswerConcurrencyTest", settings);
+        qaDatabase = databases.getQuestionsDatabase();
+        databases.seedQuestions(1, ANSWERS, 0);
+        questionID = qaDatabase.getQuestionFeed(null, false, "").get(0).getID();
+        for (Answer answer : qaDatabase.loadThread(questionID, "asker1").getAnswers()) {
+            answerIDs.add(answer.getID());
+        }
+        assertEquals(ANSWERS, answerIDs.size());
+    }
+
+    /**
+     * Races accepts for different answers and checks that exactly one answer is accepted after each round.
+     *
+     * @throws Exception if a thread fails or the round does not finish in time.
+     */
+    @Test
+    void testExactlyOneAcceptedAnswerUnderContention() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int answerID = answerIDs.get((t + round) % ANSWERS);
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return qaDatabase.acceptAnswer(questionID, answerID);
+                    }));
+                }
+                start.countDown();
+                for (Future<Boolean> result : results) {
+                    assertTrue(result.get(30, TimeUnit.SECONDS));
+                }
+
+                QuestionThread thread = qaDatabase.loadThread(questionID, "asker1");
+                assertTrue(thread.isResolved());
+                long accepted = thread.getAnswers().stream().filter(Answer::doesResolve).count();
+                assertEquals(1, accepted, "Round " + round + " left " + accepted + " accepted answers");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that an answer from another question cannot be accepted.
+     *
+     * @throws SQLException if there is an error during database operations.
+     */
+    @Test
+    void testRejectsAnswerFromAnotherQuestion() throws SQLException {
+        assertFalse(qaDatabase.acceptAnswer(questionID + 1000, answerIDs.get(0)));
+    }
+
+    /**
+     * Closes the database after all tests.
+     */
+    @AfterAll
+    static void tearDown() {
+        databases.close();
+    }
+}
@@ -0,0 +1,140 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Question;
+import application.QuestionSummary;
+import databasePart1.BulkImporter;
+import databasePart1.DumpFormat;
+import databasePart1.QuestionsAnswersDatabase;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Tests for the bulk importer.
+ * <p>
+ * Imports a million-row dump and checks it meets the throughput target, then breaks an import part
+ * way through and checks that what was committed is consistent: the counters match the rows, and new
+ * questions get ids after the range the import reserved.
+ * </p>
+ */
+public class BulkImporterTest {
+
+    // A million rows should import in seconds. H2 index upkeep bounds the rate at about 50,000 rows/sec
+    // on one core, so the floor leaves room for a slow machine
+    private static final int QUESTIONS = 100_000;
+    private static final int ANSWERS_EACH = 6;
+    private static final int COMMENTS_EACH = 3;
+    private static final double MIN_ROWS_PER_SECOND = 25_000;
+
+    private TestDatabases databases;
+    private QuestionsAnswersDatabase qaDatabase;
+
+    /**
+     * Creates fresh databases for each test.
+     *
+     * @throws SQLException if the databases cannot be created.
+     */
+    @BeforeEach
+    void setUp() throws SQLException {
+        databases = new TestDatabases("BulkImporterTest");
+        qaDatabase = databases.getQuestionsDatabase();
+    }
+
+    /**
+     * Imports a million rows from a file and checks the rate.
+     *
+     * @throws Exception if the dump cannot be written or imported.
+     */
+    @Test
+    void testMillionRowImport() throws Exception {
+        Path dump = Files.createTempFile("BulkImporterTest", ".jsonl");
+        try {
+            try (Writer out = new BufferedWriter(Files.newBufferedWriter(dump, StandardCharsets.UTF_8))) {
+                writeDump(out, QUESTIONS, ANSWERS_EACH, COMMENTS_EACH);
+            }
+            BulkImporter.Result result = new BulkImporter(qaDatabase).importFile(dump);
+            System.out.println(result);
+
+            assertEquals(QUESTIONS * (1L + ANSWERS_EACH + COMMENTS_EACH), result.getRows());
+            assertEquals(QUESTIONS, qaDatabase.numQuestions());
+            assertEquals(ANSWERS_EACH, qaDatabase.numAnswers(QUESTIONS));
+            assertTrue(result.getRowsPerSecond() >= MIN_ROWS_PER_SECOND,
+                    "Imported " + Math.round(result.getRowsPerSecond()) + " rows/sec");
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    /**
+     * Fails an import after several commits. The committed questions have the right counters and a
+     * question added afterwards does not collide with the imported ids.
+     *
+     * @throws SQLException if the database calls fail.
+     */
+    @Test
+    void testFailedImportLeavesCommittedRowsConsistent() throws SQLException {
+        databases.seedQuestions(2, 0, 0);
+        StringBuilder dump = new StringBuilder();
+        try {
+            writeDump(dump, 6, 2, 0);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        // Only noticed when the row is inserted, after the first five questions and their answers were
+        // committed four rows at a time
+        dump.append("{\"type\":\"answer\",\"id\":13,\"qID\":\"six\",\"userName\":\"u\",\"text\":\"Bad qID\"}\n");
+
+        BulkImporter importer = new BulkImporter(qaDatabase, 2, 4);
+        assertThrows(IOException.class, () -> importer.importFrom(new StringReader(dump.toString()), DumpFormat.JSONL));
+
+        List<QuestionSummary> feed = qaDatabase.getQuestionFeed(null, false, "");
+        assertEquals(2 + 6, feed.size());
+        for (QuestionSummary question : feed) {
+            assertEquals(qaDatabase.numAnswers(question.getID()), question.getAnswerCount(),
+                    "Answer count of question " + question.getID());
+        }
+
+        qaDatabase.addQuestion(new Question("late", "Asked after the import", "Gets an id after the import"));
+        int newest = qaDatabase.getQuestionFeed(null, false, "").get(0).getID();
+        assertTrue(newest > 2 + 6, "New question got id " + newest);
+    }
+
+    /**
+     * Drops the in-memory databases after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        if (databases != null) {
+            databases.close();
+        }
+    }
+
+    // Questions numbered from 1, each followed by its answers and comments
+    private static void writeDump(Appendable out, int questions, int answersEach, int commentsEach) throws IOException {
+        int answerID = 0;
+        int commentID = 0;
+        for (int q = 1; q <= questions; q++) {
+            out.append("{\"type\":\"question\",\"id\":").append(String.valueOf(q))
+                    .append(",\"userName\":\"asker\",\"title\":\"Question ").append(String.valueOf(q))
+                    .append("\",\"text\":\"Body\",\"resolved\":false,\"deleted\":false}\n");
+            for (int a = 0; a < answersEach; a++) {
+                out.append("{\"type\":\"answer\",\"id\":").append(String.valueOf(++answerID))
+                        .append(",\"qID\":").append(String.valueOf(q))
+                        .append(",\"userName\":\"answerer\",\"text\":\"Answer\",\"resolves\":false}\n");
+            }
+            for (int c = 0; c < commentsEach; c++) {
+                out.append("{\"type\":\"comment\",\"id\":").append(String.valueOf(++commentID))
+                        .append(",\"qID\":").append(String.valueOf(q))
+                        .append(",\"userName\":\"commenter\",\"text\":\"Comment\"}\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Role;
+import databasePart1.AppConfig;
+import databasePart1.DatabaseHelper;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency tests for the last-admin rule.
+ * <p>
+ * Every admin tries to give up the admin role at the same moment. Whatever order the changes run in,
+ * exactly one admin must be left.
+ * </p>
+ */
+public class LastAdminConcurrencyTest {
+
+    private static final int ADMINS = 4;
+    private static final int ROUNDS = 20;
+
+    private static TestDatabases databases;
+    private static DatabaseHelper databaseHelper;
+    private static List<String> admins;
+
+    /**
+     * Creates several admins in an in-memory database.
+     *
+     * @throws SQLException if there is an error during database initialization.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        Properties settings = new Properties();
+        settings.setProperty(AppConfig.H2_LOCK_TIMEOUT.getKey(), "10000");
+        databases = new TestDatabases("LastAdminConcurrencyTest", settings);
+        databaseHelper = databases.getDatabaseHelper();
+        admins = databases.seedUsers("admin", ADMINS, "Password1!", EnumSet.of(Role.ADMIN, Role.STUDENT));
+    }
+
+    /**
+     * Races every admin removing their own admin role and checks one admin remains after each round.
+     *
+     * @throws Exception if a thread fails or the round does not finish in time.
+     */
+    @Test
+    void testOneAdminAlwaysRemains() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(ADMINS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> results = new ArrayList<>();
+                for (String admin : admins) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return databaseHelper.changeRoles(admin, EnumSet.of(Role.STUDENT));
+                    }));
+                }
+                start.countDown();
+                int refused = 0;
+                for (Future<String> result : results) {
+                    if (result.get(30, TimeUnit.SECONDS).equals("Cannot remove the last admin")) {
+                        refused++;
+                    }
+                }
+                assertEquals(1, refused, "Refused changes in round " + round);
+                assertEquals(1, databaseHelper.countAdmins(), "Admins left after round " + round);
+
+                // Make everyone an admin again for the next round
+                for (String admin : admins) {
+                    databaseHelper.changeRoles(admin, EnumSet.of(Role.ADMIN, Role.STUDENT));
+                }
+                assertEquals(ADMINS, databaseHelper.countAdmins());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks the result of a change that is refused, one that succeeds and one for a missing user.
+     *
+     * @throws SQLException if the database calls fail.
+     */
+    @Test
+    void testChangeRolesResult() throws SQLException {
+        try (TestDatabases single = new TestDatabases("LastAdminResult")) {
+            DatabaseHelper helper = single.getDatabaseHelper();
+            String admin = single.seedUsers("only", 1, "Password1!", EnumSet.of(Role.ADMIN)).get(0);
+
+            assertEquals("Cannot remove the last admin", helper.changeRoles(admin, EnumSet.of(Role.STUDENT)));
+            assertEquals(admin, helper.changeRoles(admin, EnumSet.of(Role.ADMIN, Role.STUDENT)));
+            assertEquals("User does not exist", helper.changeRoles("nobody", EnumSet.of(Role.STUDENT)));
+            assertEquals(1, helper.countAdmins());
+        }
+    }
+
+    /**
+     * Drops the in-memory databases.
+     */
+    @AfterAll
+    static void tearDown() {
+        if (databases != null) {
+            databases.close();
+        }
+    }
+}
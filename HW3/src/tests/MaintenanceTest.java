@@ -0,0 +1,74 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import databasePart1.AppConfig;
+import databasePart1.MaintenanceService;
+import databasePart1.QuestionsAnswersDatabase;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Tests for the background maintenance of the question database.
+ * <p>
+ * Deletes some seeded questions and runs maintenance by hand with a small chunk size, so the
+ * deleted questions are archived over several chunks. Checks that only deleted questions leave the
+ * hot table, that they are still reported as deleted, and that a second run finds nothing to do.
+ * </p>
+ */
+public class MaintenanceTest {
+
+    private static final int QUESTIONS = 30;
+    private static final int DELETED = 12;
+
+    private static TestDatabases databases;
+    private static QuestionsAnswersDatabase qaDatabase;
+
+    /**
+     * Seeds questions with answers and comments and archives deletions straight away.
+     *
+     * @throws SQLException if the databases cannot be created.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        Properties overrides = new Properties();
+        overrides.setProperty(AppConfig.MAINTENANCE_CHUNK_SIZE.getKey(), "5");
+        overrides.setProperty(AppConfig.MAINTENANCE_ARCHIVE_AFTER.getKey(), "0");
+        databases = new TestDatabases("MaintenanceTest", overrides);
+        qaDatabase = databases.getQuestionsDatabase();
+        databases.seedQuestions(QUESTIONS, 2, 1);
+    }
+
+    /**
+     * Archives the deleted questions in chunks and leaves the rest alone.
+     *
+     * @throws SQLException if maintenance fails.
+     */
+    @Test
+    void testDeletedQuestionsAreArchived() throws SQLException {
+        for (int id = 1; id <= DELETED; id++) {
+            qaDatabase.deleteQuestion(id);
+        }
+
+        MaintenanceService.Report report = qaDatabase.maintenance().runOnce();
+        System.out.println(report);
+        assertEquals(DELETED, report.getRowsPurged());
+        assertFalse(report.isCompacted(), "In-memory databases are never compacted");
+        assertEquals(QUESTIONS - DELETED, qaDatabase.numQuestions());
+        assertTrue(qaDatabase.isDeleted(1), "An archived question is still deleted");
+        assertFalse(qaDatabase.isDeleted(DELETED + 1));
+        assertEquals(2, qaDatabase.numAnswers(DELETED + 1));
+
+        assertEquals(0, qaDatabase.maintenance().runOnce().getRowsPurged());
+    }
+
+    /**
+     * Drops the in-memory databases.
+     */
+    @AfterAll
+    static void tearDown() {
+        if (databases != null) {
+            databases.close();
+        }
+    }
+}
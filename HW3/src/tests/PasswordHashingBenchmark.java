@@ -0,0 +1,64 @@
+package tests;
+
+import databasePart1.PasswordHasher;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark for password checks.
+ * <p>
+ * Calibrates the hasher the same way the application does, then runs password checks from many
+ * threads for a fixed time and reports logins per second in total and per core.
+ * Run it with: java tests.PasswordHashingBenchmark [targetMillis] [seconds]
+ * </p>
+ */
+public class PasswordHashingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        int iterations = PasswordHasher.calibrate(targetMillis);
+        System.out.println("Calibrated to " + iterations + " iterations for a " + targetMillis + " ms target");
+
+        try (PasswordHasher hasher = new PasswordHasher(iterations, cores, 1024)) {
+            String stored = hasher.hash("BenchmarkPass1!");
+
+            // Twice as many callers as hashing threads, so the hashing pool stays saturated
+            int callers = cores * 2;
+            ExecutorService pool = Executors.newFixedThreadPool(callers);
+            AtomicLong logins = new AtomicLong();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long start = System.nanoTime();
+
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        if (!hasher.verify("BenchmarkPass1!", stored)) {
+                            throw new SQLException("Password did not verify");
+                        }
+                        logins.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+            pool.shutdown();
+
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            double perSecond = logins.get() / elapsed;
+            System.out.printf("%d logins in %.1f s: %.1f logins/sec, %.1f logins/sec per core (%d cores)%n",
+                    logins.get(), elapsed, perSecond, perSecond / cores, cores);
+        }
+    }
+}
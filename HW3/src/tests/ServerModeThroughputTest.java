@@ -0,0 +1,212 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Answer;
+import application.Question;
+import databasePart1.DatabaseServer;
+import databasePart1.QuestionsAnswersDatabase;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-process test for server mode.
+ * <p>
+ * This JVM hosts an in-memory question database over TCP, then starts several client JVMs that
+ * each load a thread and post an answer in a loop. The test reports the aggregate throughput and
+ * checks that every answer a client posted reached the shared database, and that a client reading a
+ * thread sees what another client has just written to it.
+ * The clients run this class's main method: java tests.ServerModeThroughputTest url qID seconds name.
+ * Their classpath is built from where this class, the application, H2 and JUnit were loaded from, and
+ * the test is skipped if any of those locations is unknown.
+ * </p>
+ */
+public class ServerModeThroughputTest {
+
+    private static final String DB_NAME = "serverModeTest";
+    private static final int CLIENTS = 4;
+    private static final int SECONDS = 5;
+
+    private static DatabaseServer server;
+    private static QuestionsAnswersDatabase qaDatabase;
+    private static String clientUrl;
+    private static int questionID;
+
+    /**
+     * Creates the shared database with one question and starts serving it over TCP.
+     *
+     * @throws Exception if the database or the server cannot be started.
+     */
+    @BeforeAll
+    static void setUp() throws Exception {
+        qaDatabase = new QuestionsAnswersDatabase("jdbc:h2:mem:" + DB_NAME + ";DB_CLOSE_DELAY=-1");
+        qaDatabase.initializeTestDatabase();
+        qaDatabase.addQuestion(new Question("Host", "Shared question", "Answered from many processes"));
+        questionID = qaDatabase.getQuestionFeed(null, false, "").get(0).getID();
+
+        int port = freePort();
+        server = new DatabaseServer(DatabaseServer.Mode.HOST, "localhost", port, false);
+        server.start();
+        clientUrl = "jdbc:h2:tcp://localhost:" + port + "/mem:" + DB_NAME + ";AUTO_RECONNECT=TRUE";
+    }
+
+    /**
+     * Runs the client JVMs at the same time and checks their combined work against the database.
+     *
+     * @throws Exception if a client cannot be started or fails.
+     */
+    @Test
+    void testClientsShareOneServer() throws Exception {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = clientClassPath();
+        Assumptions.assumeTrue(classPath != null, "Cannot find the classpath for the client JVMs");
+
+        int before = qaDatabase.numAnswers(questionID);
+        List<Process> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            ProcessBuilder builder = new ProcessBuilder(javaBin, "-cp", classPath, ServerModeThroughputTest.class.getName(),
+                    clientUrl, String.valueOf(questionID), String.valueOf(SECONDS), "client" + i);
+            builder.redirectErrorStream(true);
+            clients.add(builder.start());
+        }
+
+        long operations = 0;
+        long answers = 0;
+        for (Process client : clients) {
+            long[] result = readResult(client);
+            assertTrue(client.waitFor(SECONDS + 60, TimeUnit.SECONDS), "Client did not finish");
+            assertEquals(0, client.exitValue(), "Client failed");
+            operations += result[0];
+            answers += result[1];
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d clients: %d operations in %.1f s, %.1f operations/sec%n",
+                CLIENTS, operations, elapsed, operations / elapsed);
+        assertTrue(answers > 0, "No client posted an answer");
+        assertEquals(before + answers, qaDatabase.numAnswers(questionID));
+    }
+
+    /**
+     * Opens two clients in this JVM. One reads the thread, the other posts an answer to it, and the
+     * first must see the answer on its next read instead of a copy kept from before.
+     *
+     * @throws SQLException if a client cannot connect or a database call fails.
+     */
+    @Test
+    void testClientSeesAnotherClientsWrite() throws SQLException {
+        QuestionsAnswersDatabase reader = new QuestionsAnswersDatabase(clientUrl);
+        QuestionsAnswersDatabase writer = new QuestionsAnswersDatabase(clientUrl);
+        try {
+            reader.connectToQuestionAnswerDatabase();
+            writer.connectToQuestionAnswerDatabase();
+            int seen = reader.loadThread(questionID, "reader").getAnswers().size();
+
+            writer.addAnswer(new Answer(questionID, "writer", "Posted by another client"));
+
+            List<Answer> answers = reader.loadThread(questionID, "reader").getAnswers();
+            assertEquals(seen + 1, answers.size());
+            assertTrue(answers.stream().anyMatch(a -> a.getUserName().equals("writer")),
+                    "The reader does not see the other client's answer");
+        } finally {
+            reader.closeConnection();
+            writer.closeConnection();
+        }
+    }
+
+    /**
+     * Stops the server and closes the database after all tests.
+     */
+    @AfterAll
+    static void tearDown() {
+        server.stop();
+        qaDatabase.closeConnection();
+    }
+
+    /**
+     * Client process: loads the thread and posts an answer until time runs out, then prints
+     * "RESULT operations answers".
+     *
+     * @param args the server URL, the question ID, the number of seconds to run, and a client name.
+     * @throws SQLException if a database call fails.
+     */
+    public static void main(String[] args) throws SQLException {
+        String url = args[0];
+        int qID = Integer.parseInt(args[1]);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Long.parseLong(args[2]));
+        String name = args[3];
+
+        QuestionsAnswersDatabase client = new QuestionsAnswersDatabase(url);
+        client.connectToQuestionAnswerDatabase();
+        long operations = 0;
+        long answers = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                client.loadThread(qID, name);
+                client.addAnswer(new Answer(qID, name, "Answer " + answers + " from " + name));
+                operations += 2;
+                answers++;
+            }
+        } finally {
+            // Drains any queued answers before the process exits
+            client.closeConnection();
+        }
+        System.out.println("RESULT " + operations + " " + answers);
+    }
+
+    // Read a client's output until its result line; other lines are passed through
+    private static long[] readResult(Process client) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
+            long[] result = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    String[] parts = line.split(" ");
+                    result = new long[] { Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+                } else {
+                    System.out.println(line);
+                }
+            }
+            assertNotNull(result, "Client did not report a result");
+            return result;
+        }
+    }
+
+    // The directories and jars the client JVMs need. java.class.path is not enough: under java -jar it
+    // is only the launcher's jar. Returns null if a location cannot be found
+    private static String clientClassPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (Class<?> type : List.of(ServerModeThroughputTest.class, QuestionsAnswersDatabase.class, Answer.class,
+                org.h2.Driver.class, Assertions.class)) {
+            CodeSource source = type.getProtectionDomain().getCodeSource();
+            if (source == null || source.getLocation() == null) {
+                return null;
+            }
+            try {
+                entries.add(Paths.get(source.getLocation().toURI()).toString());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import databasePart1.DatabaseHelper;
+import databasePart1.SharedLoginThrottle;
+import databasePart1.ThrottledException;
+import java.sql.SQLException;
+
+/**
+ * Tests for the shared login throttle.
+ * <p>
+ * Two throttles on one database stand in for two processes. Failures in either one count towards the
+ * same limit, a success clears the name for both, and a window that has ended no longer counts.
+ * </p>
+ */
+public class SharedLoginThrottleTest {
+
+    private static final int MAX_FAILURES = 3;
+    private static final long WINDOW_MILLIS = 60_000;
+
+    private static TestDatabases databases;
+    private static DatabaseHelper databaseHelper;
+
+    /**
+     * Creates an in-memory database with the LoginAttempts table.
+     *
+     * @throws SQLException if there is an error during database initialization.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        databases = new TestDatabases("SharedLoginThrottleTest");
+        databaseHelper = databases.getDatabaseHelper();
+    }
+
+    /**
+     * Fails twice in one process and once in the other. The next attempt is refused in both.
+     *
+     * @throws SQLException if the database calls fail.
+     */
+    @Test
+    void testFailuresCountAcrossProcesses() throws SQLException {
+        try (SharedLoginThrottle first = new SharedLoginThrottle(databaseHelper, MAX_FAILURES, WINDOW_MILLIS);
+                SharedLoginThrottle second = new SharedLoginThrottle(databaseHelper, MAX_FAILURES, WINDOW_MILLIS)) {
+            failOnce(first, "guessed");
+            failOnce(first, "guessed");
+            failOnce(second, "guessed");
+
+            assertThrows(ThrottledException.class, () -> second.check("guessed"));
+            assertThrows(ThrottledException.class, () -> first.check("guessed"));
+        }
+    }
+
+    /**
+     * Fails in one process and logs in through the other, which clears the shared count.
+     *
+     * @throws SQLException if the database calls fail.
+     */
+    @Test
+    void testSuccessClearsSharedCount() throws SQLException {
+        try (SharedLoginThrottle first = new SharedLoginThrottle(databaseHelper, MAX_FAILURES, WINDOW_MILLIS);
+                SharedLoginThrottle second = new SharedLoginThrottle(databaseHelper, MAX_FAILURES, WINDOW_MILLIS);
+                SharedLoginThrottle strict = new SharedLoginThrottle(databaseHelper, 1, WINDOW_MILLIS)) {
+            failOnce(first, "returning");
+            second.check("returning");
+            second.recordSuccess("returning");
+
+            // With a limit of one, any failure left in the table would refuse this
+            strict.check("returning");
+        }
+    }
+
+    /**
+     * Reaches the limit, waits for the window to end and checks the name is allowed again and a new
+     * failure starts a new window.
+     *
+     * @throws Exception if the database calls fail or the wait is interrupted.
+     */
+    @Test
+    void testEndedWindowRestarts() throws Exception {
+        long window = 200;
+        try (SharedLoginThrottle first = new SharedLoginThrottle(databaseHelper, 1, window);
+                SharedLoginThrottle second = new SharedLoginThrottle(databaseHelper, 1, window)) {
+            failOnce(first, "patient");
+            assertThrows(ThrottledException.class, () -> second.check("patient"));
+
+            Thread.sleep(2 * window);
+            failOnce(second, "patient");
+            // One failure in the new window, not two
+            try (SharedLoginThrottle third = new SharedLoginThrottle(databaseHelper, 2, window)) {
+                third.check("patient");
+            }
+        }
+    }
+
+    /**
+     * Drops the in-memory databases.
+     */
+    @AfterAll
+    static void tearDown() {
+        if (databases != null) {
+            databases.close();
+        }
+    }
+
+    // One checked attempt that fails
+    private static void failOnce(SharedLoginThrottle throttle, String userName) throws SQLException {
+        throttle.check(userName);
+        throttle.recordFailure(userName);
+    }
+}
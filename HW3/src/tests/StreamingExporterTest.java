@@ -0,0 +1,179 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Answer;
+import application.Comment;
+import application.Question;
+import application.QuestionThread;
+import databasePart1.BulkImporter;
+import databasePart1.DumpFormat;
+import databasePart1.QuestionsAnswersDatabase;
+import databasePart1.StreamingExporter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.SQLException;
+
+/**
+ * Tests for the streaming exporter.
+ * <p>
+ * Exports a seeded database in each format and imports the dump into a fresh one, which must end up
+ * with the same threads, including empty text and text that needs quoting or escaping. Also posts to
+ * the database in the middle of an export and checks the dump still imports: every answer and comment
+ * in it belongs to a question in it.
+ * </p>
+ */
+public class StreamingExporterTest {
+
+    private static final String TRICKY_TEXT = "Commas, \"quotes\", a\nline break, a\r\nCRLF, a lone\rCR, a\ttab, "
+            + "a back\\slash and café";
+
+    private static TestDatabases source;
+    private static QuestionsAnswersDatabase qaDatabase;
+
+    /**
+     * Seeds the source database, including a thread with text that needs escaping, a thread with empty
+     * text and an accepted answer.
+     *
+     * @throws SQLException if the database cannot be seeded.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        source = new TestDatabases("StreamingExporterTest");
+        qaDatabase = source.getQuestionsDatabase();
+        source.seedQuestions(10, 2, 1);
+        qaDatabase.addQuestion(new Question("tricky", "Title, with \"quotes\"", TRICKY_TEXT));
+        qaDatabase.addAnswer(new Answer(11, "answerer", TRICKY_TEXT));
+        qaDatabase.addComments(new Comment(11, "commenter", TRICKY_TEXT));
+        qaDatabase.addQuestion(new Question("blank", "", ""));
+        qaDatabase.addAnswer(new Answer(12, "answerer", ""));
+        assertTrue(qaDatabase.acceptAnswer(1, 1));
+    }
+
+    /**
+     * Round-trips the database through a JSONL dump.
+     *
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void testJsonlRoundTrip() throws Exception {
+        roundTrip(DumpFormat.JSONL);
+    }
+
+    /**
+     * Round-trips the database through a CSV dump.
+     *
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void testCsvRoundTrip() throws Exception {
+        roundTrip(DumpFormat.CSV);
+    }
+
+    /**
+     * Adds a question with a comment after the exporter has started on the answers. The export reads one
+     * snapshot, so it leaves both out rather than writing a comment whose question is missing.
+     *
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void testExportIsOneSnapshot() throws Exception {
+        try (TestDatabases live = new TestDatabases("StreamingExporterLive");
+                TestDatabases copy = new TestDatabases("StreamingExporterLiveCopy")) {
+            live.seedQuestions(3, 1, 1);
+            QuestionsAnswersDatabase liveDatabase = live.getQuestionsDatabase();
+            PostingWriter out = new PostingWriter(liveDatabase);
+
+            long rows = new StreamingExporter(liveDatabase, null).exportTo(out, DumpFormat.JSONL);
+            assertTrue(out.posted, "The writer never posted during the export");
+            assertEquals(4, liveDatabase.numQuestions());
+
+            BulkImporter.Result result = new BulkImporter(copy.getQuestionsDatabase())
+                    .importFrom(new StringReader(out.toString()), DumpFormat.JSONL);
+            assertEquals(rows, result.getRows());
+            assertEquals(3, result.getQuestions());
+            assertEquals(3, result.getComments());
+        }
+    }
+
+    /**
+     * Drops the in-memory databases.
+     */
+    @AfterAll
+    static void tearDown() {
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    // Export the source database, import the dump into a fresh one and compare every thread
+    private static void roundTrip(DumpFormat format) throws IOException, SQLException {
+        StringWriter out = new StringWriter();
+        long rows = new StreamingExporter(qaDatabase, null).exportTo(out, format);
+
+        try (TestDatabases copy = new TestDatabases("StreamingExporterCopy")) {
+            QuestionsAnswersDatabase copyDatabase = copy.getQuestionsDatabase();
+            BulkImporter.Result result = new BulkImporter(copyDatabase).importFrom(new StringReader(out.toString()), format);
+            assertEquals(rows, result.getRows());
+            assertEquals(qaDatabase.numQuestions(), copyDatabase.numQuestions());
+
+            for (int id = 1; id <= qaDatabase.numQuestions(); id++) {
+                QuestionThread expected = qaDatabase.loadThread(id, "viewer");
+                QuestionThread actual = copyDatabase.loadThread(id, "viewer");
+                assertEquals(expected.getUserName(), actual.getUserName());
+                assertEquals(expected.getTitle(), actual.getTitle());
+                assertEquals(expected.getBody(), actual.getBody());
+                assertEquals(expected.isResolved(), actual.isResolved());
+                assertEquals(expected.getAnswers().size(), actual.getAnswers().size());
+                for (int i = 0; i < expected.getAnswers().size(); i++) {
+                    Answer answer = expected.getAnswers().get(i);
+                    assertEquals(answer.getContent(), actual.getAnswers().get(i).getContent());
+                    assertEquals(answer.doesResolve(), actual.getAnswers().get(i).doesResolve());
+                }
+                assertEquals(expected.getComments().size(), actual.getComments().size());
+                for (int i = 0; i < expected.getComments().size(); i++) {
+                    assertEquals(expected.getComments().get(i).getContent(), actual.getComments().get(i).getContent());
+                }
+            }
+        }
+    }
+
+    // Posts a new question with a comment once the first answer has been written, while the export runs
+    private static final class PostingWriter extends StringWriter {
+        private final QuestionsAnswersDatabase database;
+        private boolean posted = false;
+
+        PostingWriter(QuestionsAnswersDatabase database) {
+            this.database = database;
+        }
+
+        @Override
+        public void write(int c) {
+            super.write(c);
+            postOnce();
+        }
+
+        @Override
+        public void write(String str) {
+            super.write(str);
+            postOnce();
+        }
+
+        private void postOnce() {
+            StringBuffer written = getBuffer();
+            if (posted || written.length() == 0 || written.charAt(written.length() - 1) != '\n'
+                    || written.indexOf("\"type\":\"answer\"") < 0) {
+                return;
+            }
+            posted = true;
+            try {
+                database.addQuestion(new Question("late", "Asked during the export", "Not in the snapshot"));
+                int qID = database.getQuestionFeed(null, false, "").get(0).getID();
+                database.addComments(new Comment(qID, "late", "Also not in the snapshot"));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
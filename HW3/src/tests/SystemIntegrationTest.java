@@ -2,9 +2,11 @@ package tests;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.*;
+import application.Role;
 import application.User;
 import databasePart1.DatabaseHelper;
 import java.sql.SQLException;
+import java.util.EnumSet;
 
 /**
  * Integration tests for the User Question and Answer System.
@@ -21,20 +23,21 @@ import java.sql.SQLException;
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class SystemIntegrationTest {
 
+    private static TestDatabases databases;
     private static DatabaseHelper databaseHelper;
     private static String inviteCode;
     private static final String TEST_USER = "TestUser";
     private static final String TEST_PASSWORD = "TestPass123!";
     
     /**
-     * Set up the database for use in all of the tests.
+     * Set up a fresh in-memory database for use in all of the tests.
      *
      * @throws SQLException if there is an error during database initialization.
      */
     @BeforeAll
     static void setUp() throws SQLException {
-        databaseHelper = new DatabaseHelper();
-        databaseHelper.initializeTestDatabase();
+        databases = new TestDatabases("SystemIntegrationTest");
+        databaseHelper = databases.getDatabaseHelper();
     }
 
     /**
@@ -112,14 +115,33 @@ public class SystemIntegrationTest {
     }
 
     /**
-     * Cleans up after all tests by closing the database connection.
+     * Registers with a taken user name. The registration fails and the invitation code stays unused, so
+     * it still registers someone else.
+     *
+     * @throws SQLException if there is an error during database operations.
+     */
+    @Test
+    @Order(6)
+    void testFailedRegistrationKeepsInviteCode() throws SQLException {
+        String code = databaseHelper.generateInvitationCode(false, true, false, false, false);
+        assertThrows(SQLException.class,
+                () -> databaseHelper.registerWithInvitationCode(new User("AdminUser", "AdminPass123!", ""), code));
+        User student = new User("SecondUser", TEST_PASSWORD, "");
+        assertEquals(EnumSet.of(Role.STUDENT), databaseHelper.registerWithInvitationCode(student, code));
+        assertEquals("student", databaseHelper.getUserRole("SecondUser"));
+        assertNull(databaseHelper.registerWithInvitationCode(new User("ThirdUser", TEST_PASSWORD, ""), code));
+        System.out.println("Test #6 Complete.");
+    }
+
+    /**
+     * Cleans up after all tests by closing and dropping the in-memory database.
      *
      * @throws SQLException if there is an error during connection closure.
      */
     @AfterAll
     static void tearDown() throws SQLException {
     	System.out.println("Tests are done! Closing connection...");
-        databaseHelper.closeConnection();
+        databases.close();
     }
 }
 
@@ -0,0 +1,165 @@
+package tests;
+
+import application.Role;
+import application.User;
+import databasePart1.AppConfig;
+import databasePart1.BulkImporter;
+import databasePart1.DatabaseHelper;
+import databasePart1.DumpFormat;
+import databasePart1.QuestionsAnswersDatabase;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test profile for the database helpers.
+ * <p>
+ * Each instance points both helpers at their own uniquely named in-memory H2 databases, so a test
+ * class starts from a fresh schema in milliseconds, never touches the files in the home directory,
+ * and can run in parallel with other suites. Password hashing uses a small fixed iteration count
+ * instead of calibrating, and fixtures are loaded with batch inserts.
+ * </p>
+ */
+public class TestDatabases implements AutoCloseable {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // Enough iterations to exercise the hashing code without slowing the tests down
+    private static final int TEST_HASH_ITERATIONS = 1000;
+
+    private final AppConfig config;
+    private final DatabaseHelper databaseHelper;
+    private final QuestionsAnswersDatabase qaDatabase;
+
+    /**
+     * Creates and connects both databases for one suite.
+     *
+     * @param suite a name for the suite, used in the database names.
+     * @throws SQLException if a database cannot be created.
+     */
+    public TestDatabases(String suite) throws SQLException {
+        this(suite, new Properties());
+    }
+
+    /**
+     * Creates and connects both databases for one suite with some settings changed.
+     *
+     * @param suite     a name for the suite, used in the database names.
+     * @param overrides settings to change on top of the test profile.
+     * @throws SQLException if a database cannot be created.
+     */
+    public TestDatabases(String suite, Properties overrides) throws SQLException {
+        config = AppConfig.of(profile(suite, overrides));
+        databaseHelper = new DatabaseHelper(config);
+        databaseHelper.connectToDatabase();
+        qaDatabase = new QuestionsAnswersDatabase(config);
+        qaDatabase.connectToQuestionAnswerDatabase();
+    }
+
+    /**
+     * Returns the test profile settings for a suite: unique in-memory URLs, fast hashing and small pools.
+     *
+     * @param suite     a name for the suite, used in the database names.
+     * @param overrides settings to change on top of the test profile.
+     * @return the settings to pass to AppConfig.of.
+     */
+    public static Properties profile(String suite, Properties overrides) {
+        String name = suite.replaceAll("[^A-Za-z0-9]", "_") + "_" + COUNTER.incrementAndGet();
+        Properties settings = new Properties();
+        settings.setProperty(AppConfig.FOUNDATION_URL.getKey(), "jdbc:h2:mem:" + name + "_foundation;DB_CLOSE_DELAY=-1");
+        settings.setProperty(AppConfig.QUESTIONS_URL.getKey(), "jdbc:h2:mem:" + name + "_questions;DB_CLOSE_DELAY=-1");
+        settings.setProperty(AppConfig.HASH_ITERATIONS.getKey(), String.valueOf(TEST_HASH_ITERATIONS));
+        settings.setProperty(AppConfig.CODE_POOL_SIZE.getKey(), "16");
+        settings.setProperty(AppConfig.POOL_SIZE.getKey(), "4");
+        settings.putAll(overrides);
+        return settings;
+    }
+
+    public AppConfig getConfig() { return config; }
+    public DatabaseHelper getDatabaseHelper() { return databaseHelper; }
+    public QuestionsAnswersDatabase getQuestionsDatabase() { return qaDatabase; }
+
+    /**
+     * Registers users named prefix0, prefix1, ... with the same password and roles in one batch.
+     *
+     * @param prefix   the start of every user name.
+     * @param count    how many users to add.
+     * @param password the password of every user.
+     * @param roles    the roles of every user.
+     * @return the user names that were added.
+     * @throws SQLException if the users cannot be inserted.
+     */
+    public List<String> seedUsers(String prefix, int count, String password, EnumSet<Role> roles) throws SQLException {
+        List<User> users = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(new User(prefix + i, password, roles));
+            names.add(prefix + i);
+        }
+        databaseHelper.registerAll(users);
+        return names;
+    }
+
+    /**
+     * Adds questions with answers and comments in batches through the bulk importer.
+     *
+     * @param questions       how many questions to add.
+     * @param answersEach     how many answers each question gets.
+     * @param commentsEach    how many comments each question gets.
+     * @return what was imported.
+     * @throws SQLException if the rows cannot be inserted.
+     */
+    public BulkImporter.Result seedQuestions(int questions, int answersEach, int commentsEach) throws SQLException {
+        StringBuilder dump = new StringBuilder();
+        int answerID = 0;
+        int commentID = 0;
+        for (int q = 1; q <= questions; q++) {
+            dump.append("{\"type\":\"question\",\"id\":").append(q).append(",\"userName\":\"asker").append(q % 10)
+                    .append("\",\"title\":\"Question ").append(q).append("\",\"text\":\"Body of question ").append(q)
+                    .append("\",\"resolved\":false,\"deleted\":false}\n");
+            for (int a = 0; a < answersEach; a++) {
+                dump.append("{\"type\":\"answer\",\"id\":").append(++answerID).append(",\"qID\":").append(q)
+                        .append(",\"userName\":\"answerer").append(a).append("\",\"text\":\"Answer ").append(a)
+                        .append("\",\"resolves\":false}\n");
+            }
+            for (int c = 0; c < commentsEach; c++) {
+                dump.append("{\"type\":\"comment\",\"id\":").append(++commentID).append(",\"qID\":").append(q)
+                        .append(",\"userName\":\"commenter").append(c).append("\",\"text\":\"Comment ").append(c)
+                        .append("\"}\n");
+            }
+        }
+        try {
+            return new BulkImporter(qaDatabase).importFrom(new StringReader(dump.toString()), DumpFormat.JSONL);
+        } catch (IOException e) {
+            // Reading from a string cannot fail
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Closes both helpers and drops their in-memory databases.
+     */
+    @Override
+    public void close() {
+        databaseHelper.closeConnection();
+        qaDatabase.closeConnection();
+        shutdown(config.get(AppConfig.FOUNDATION_URL));
+        shutdown(config.get(AppConfig.QUESTIONS_URL));
+    }
+
+    private void shutdown(String url) {
+        try (Connection connection = DriverManager.getConnection(url, config.get(AppConfig.DB_USER),
+                config.get(AppConfig.DB_PASSWORD))) {
+            connection.createStatement().execute("SHUTDOWN");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import application.Answer;
+import databasePart1.QuestionsAnswersDatabase;
+import databasePart1.WriteBehindQueue;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the write-behind queue.
+ * <p>
+ * Checks that one bad post in a group commit fails on its own while the rest of the group is saved,
+ * and that posts racing with close() are either written or rejected, never left waiting.
+ * </p>
+ */
+public class WriteBehindQueueTest {
+
+    // A question id that does not exist, so its answers break the foreign key
+    private static final int MISSING_QUESTION = 999999;
+
+    private static TestDatabases databases;
+    private static QuestionsAnswersDatabase qaDatabase;
+    private static int questionID;
+
+    /**
+     * Creates a database with one question to post answers to.
+     *
+     * @throws SQLException if the databases cannot be created.
+     */
+    @BeforeAll
+    static void setUp() throws SQLException {
+        databases = new TestDatabases("WriteBehindQueueTest");
+        qaDatabase = databases.getQuestionsDatabase();
+        databases.seedQuestions(1, 0, 0);
+        questionID = 1;
+    }
+
+    /**
+     * Posts answers from several threads into one group, one of them to a missing question.
+     * Only that caller gets an error and every other answer is saved.
+     *
+     * @throws Exception if a poster thread fails unexpectedly.
+     */
+    @Test
+    void testBadPostFailsAlone() throws Exception {
+        int before = qaDatabase.numAnswers(questionID);
+        // A long delay makes every post land in the same group
+        qaDatabase.enableWriteBehind(100, 50, 500, WriteBehindQueue.Durability.ON_COMMIT,
+                WriteBehindQueue.Backpressure.BLOCK);
+        ExecutorService posters = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int qID = i == 3 ? MISSING_QUESTION : questionID;
+                String user = "poster" + i;
+                results.add(posters.submit(() -> {
+                    qaDatabase.addAnswer(new Answer(qID, user, "Answer from " + user));
+                    return null;
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (i == 3) {
+                    ExecutionException e = assertThrows(ExecutionException.class, results.get(i)::get);
+                    assertTrue(e.getCause() instanceof SQLException);
+                } else {
+                    results.get(i).get(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            posters.shutdown();
+            qaDatabase.disableWriteBehind();
+        }
+        assertEquals(before + 7, qaDatabase.numAnswers(questionID));
+    }
+
+    /**
+     * Queues answers without waiting for the commit, one of them bad, and closes the queue.
+     * The valid answers are still saved.
+     *
+     * @throws SQLException if an answer cannot be queued.
+     */
+    @Test
+    void testBadPostDoesNotLoseQueuedPosts() throws SQLException {
+        int before = qaDatabase.numAnswers(questionID);
+        qaDatabase.enableWriteBehind(100, 50, 500, WriteBehindQueue.Durability.ON_ENQUEUE,
+                WriteBehindQueue.Backpressure.BLOCK);
+        for (int i = 0; i < 6; i++) {
+            int qID = i == 2 ? MISSING_QUESTION : questionID;
+            qaDatabase.addAnswer(new Answer(qID, "queued" + i, "Queued answer " + i));
+        }
+        qaDatabase.disableWriteBehind();
+        assertEquals(before + 5, qaDatabase.numAnswers(questionID));
+    }
+
+    /**
+     * Closes the queue while threads keep posting. Every post returns, and every post that returned
+     * without an error was saved.
+     *
+     * @throws Exception if a poster thread does not finish.
+     */
+    @Test
+    void testPostsRacingCloseNeverHang() throws Exception {
+        int before = qaDatabase.numAnswers(questionID);
+        WriteBehindQueue queue = new WriteBehindQueue(qaDatabase, 1000, 20, 1,
+                WriteBehindQueue.Durability.ON_COMMIT, WriteBehindQueue.Backpressure.BLOCK);
+        AtomicInteger saved = new AtomicInteger();
+        ExecutorService posters = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String user = "racer" + t;
+            results.add(posters.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try {
+                        queue.submit(new Answer(questionID, user, "Racing answer " + i));
+                        saved.incrementAndGet();
+                    } catch (SQLException e) {
+                        // Rejected because the queue closed
+                    }
+                }
+            }));
+        }
+        Thread.sleep(50);
+        queue.close();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        posters.shutdown();
+        assertEquals(before + saved.get(), qaDatabase.numAnswers(questionID));
+    }
+
+    /**
+     * Drops the in-memory databases.
+     */
+    @AfterAll
+    static void tearDown() {
+        if (databases != null) {
+            databases.close();
+        }
+    }
+}